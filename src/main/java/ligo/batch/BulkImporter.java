@@ -0,0 +1,508 @@
+package ligo.batch;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import ligo.meta.BaseRelationship;
+import ligo.meta.BasicRelationType;
+import ligo.meta.Bucketed;
+import ligo.meta.Ordered;
+import ligo.meta.RelationType;
+import ligo.utils.Buckets;
+import ligo.utils.EntityMeta;
+import ligo.utils.FieldAccessor;
+import ligo.utils.OrderIndex;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.index.IndexManager;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.index.lucene.ValueContext;
+import org.neo4j.index.lucene.unsafe.batchinsert.LuceneBatchInserterIndexProvider;
+import org.neo4j.kernel.api.exceptions.schema.AlreadyIndexedException;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndex;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndexProvider;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+import org.neo4j.unsafe.batchinsert.BatchRelationship;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Constructor;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline importer that writes @Entity nodes and their relationships straight to the store through
+ * Neo4j's BatchInserter. The store must not be in use by a running database while importing.
+ * <p/>
+ * Input files are either JSONL (one JSON object per line) or CSV with a header line, chosen by the
+ * ".csv" extension. Every node record carries an external "id" that is only used to resolve the
+ * "start" and "end" columns of relationship records; it is not stored. Other keys are matched
+ * against the @Property fields of the class, ignoring case, the same way Beanify does.
+ * <p/>
+ * Lines are parsed on a pool of threads, while nodes and relationships are written in input order
+ * on the calling thread, as the BatchInserter is not thread safe. Unparsable lines, records with a
+ * malformed value and relationships with an unknown start or end are logged and skipped, see
+ * {@link #getSkippedCount()}. EXACT schema indexes and FULL_TEXT
+ * Lucene indexes of imported classes are created here, so DBConfig finds them in place on start.
+ * Relationships imported by their BaseRelationship class are laid out as EntityRepo writes them:
+ * in the order index if @Ordered, through the buckets of their end node if @Bucketed.
+ */
+public class BulkImporter implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BulkImporter.class);
+  private static final String EXTERNAL_ID = "id";
+  private static final String START = "start";
+  private static final String END = "end";
+  private static final String CREATED_AT = "cat";
+  private static final String UPDATED_AT = "uat";
+  private static final int CHUNK_SIZE = 5000;
+  private static final int DEFAULT_PROGRESS_INTERVAL = 100000;
+
+  private final BatchInserter inserter;
+  private final BatchInserterIndexProvider indexProvider;
+  private final ExecutorService parsers;
+  private final int parallelism;
+  private final Map<Class<?>, Map<String, Long>> externalIds = Maps.newHashMap();
+  private final Map<String, BatchInserterIndex> fullTextIndexes = Maps.newHashMap();
+  private final Map<String, BatchInserterIndex> orderIndexes = Maps.newHashMap();
+  private final Set<Class<?>> indexedClasses = Sets.newHashSet();
+  private final AtomicLong skipped = new AtomicLong();
+  private int progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+  public BulkImporter(String storeDir) {
+    this(storeDir, Runtime.getRuntime().availableProcessors());
+  }
+
+  public BulkImporter(String storeDir, int parallelism) {
+    this.inserter = BatchInserters.inserter(storeDir);
+    this.indexProvider = new LuceneBatchInserterIndexProvider(inserter);
+    this.parallelism = Math.max(1, parallelism);
+    this.parsers = Executors.newFixedThreadPool(this.parallelism);
+  }
+
+  /**
+   * Imports nodes of the given class
+   *
+   * @param klass @Entity class of the nodes
+   * @param file  JSONL or CSV file
+   * @return Number of nodes imported
+   */
+  public <T> long importNodes(final Class<T> klass, final File file) throws IOException {
+    final EntityMeta<T> meta = EntityMeta.of(klass);
+    final Label label = meta.getLabel();
+    createIndexes(meta);
+
+    final Map<String, Long> ids = externalIdsOf(klass);
+    final Map<String, String> fullTextIndexNames = meta.getFullTextIndexNames();
+    final long importTime = System.currentTimeMillis();
+
+    return read(file, label.name(), new RecordWriter() {
+      @Override
+      public boolean write(Map<String, Object> record) {
+        final Map<String, Object> properties = Maps.newHashMap();
+        for (FieldAccessor property : meta.getPersistable()) {
+          if (property.getKey().equals(EXTERNAL_ID)) {
+            continue;
+          }
+          final Object value;
+          try {
+            value = RecordParser.convert(property.getField().getType(),
+                lookup(record, property.getKey()));
+          } catch (IllegalArgumentException e) {
+            LOG.warn("Skipping {} with malformed {} : {}", label.name(), property.getKey(), record);
+            return false;
+          }
+          if (value != null) {
+            properties.put(property.getKey(), value);
+          }
+        }
+        // Same defaults the repositories set on create
+        for (String timestamp : new String[]{CREATED_AT, UPDATED_AT}) {
+          if (!properties.containsKey(timestamp) && !meta.getAccessors(timestamp).isEmpty()) {
+            properties.put(timestamp, importTime);
+          }
+        }
+
+        final long nodeId = inserter.createNode(properties, label);
+
+        final Object externalId = record.get(EXTERNAL_ID);
+        if (externalId != null) {
+          ids.put(externalId.toString(), nodeId);
+        }
+        for (Map.Entry<String, String> fullText : fullTextIndexNames.entrySet()) {
+          final Object value = properties.get(fullText.getKey());
+          if (value != null) {
+            fullTextIndexes.get(fullText.getValue())
+                .add(nodeId, MapUtil.map(fullText.getKey(), value));
+          }
+        }
+        return true;
+      }
+    });
+  }
+
+  /**
+   * Imports relationships of the given type, without order index nor buckets. Use
+   * {@link #importRelationships(BaseRelationship, File)} for @Ordered or @Bucketed relationships.
+   * Each record needs "start" and "end" with the external ids of nodes imported earlier; the
+   * remaining keys become relationship properties.
+   *
+   * @param relationType Type of relationship
+   * @param file         JSONL or CSV file
+   * @return Number of relationships imported
+   */
+  public long importRelationships(final RelationType<?, ?> relationType, final File file)
+      throws IOException {
+    return importRelationships(relationType, null, null, file);
+  }
+
+  /**
+   * Imports relationships of the given class, laid out as EntityRepo#addRelatives writes them. An
+   * @Ordered relationship is added to its order index, with the import time as order key when the
+   * record has none, so that it is read by EntityRepo#getRelativesPage. A @Bucketed relationship
+   * attaches to a bucket of its end node, created if missing.
+   *
+   * @param relationship Relationship, from start to end whatever its direction
+   * @param file         JSONL or CSV file
+   * @return Number of relationships imported
+   */
+  public long importRelationships(final BaseRelationship<?, ?> relationship, final File file)
+      throws IOException {
+    return importRelationships(relationship.getRelationType(),
+        relationship.getClass().getAnnotation(Ordered.class),
+        relationship.getClass().getAnnotation(Bucketed.class), file);
+  }
+
+  private long importRelationships(final RelationType<?, ?> relationType, final Ordered ordered,
+                                   final Bucketed bucketed, final File file) throws IOException {
+    final Map<String, Long> startIds = externalIdsOf(relationType.getStartNodeType());
+    final Map<String, Long> endIds = externalIdsOf(relationType.getEndNodeType());
+    final BatchInserterIndex orderIndex = ordered == null ? null : orderIndex(relationType, ordered);
+    final Map<Long, Map<Map<String, Object>, Long>> buckets = Maps.newHashMap();
+    final long importTime = System.currentTimeMillis();
+
+    return read(file, relationType.name(), new RecordWriter() {
+      @Override
+      public boolean write(Map<String, Object> record) {
+        final Long start = resolve(startIds, record.remove(START));
+        final Long end = resolve(endIds, record.remove(END));
+        if (start == null || end == null) {
+          LOG.warn("Skipping {} with unknown start or end node : {}", relationType.name(), record);
+          return false;
+        }
+        final Map<String, Object> properties = Maps.newHashMap();
+        for (Map.Entry<String, Object> entry : record.entrySet()) {
+          properties.put(entry.getKey(), RecordParser.convertUntyped(entry.getValue()));
+        }
+        long order = importTime;
+        if (ordered != null) {
+          final Object value = properties.get(ordered.key());
+          try {
+            if (value != null) {
+              order = (Long) RecordParser.convert(long.class, value);
+            }
+          } catch (IllegalArgumentException e) {
+            LOG.warn("Skipping {} with malformed {} : {}", relationType.name(), ordered.key(), record);
+            return false;
+          }
+          properties.put(ordered.key(), order);
+        }
+
+        final long target = bucketed == null ? end :
+            bucketOf(end, relationType, start, bucketed.buckets(), buckets);
+        final long id = inserter.createRelationship(start, target, relationType, properties);
+        if (ordered != null) {
+          final Map<String, Object> entry = MapUtil.map(ordered.key(), ValueContext.numeric(order),
+              OrderIndex.TIE_BREAK, ValueContext.numeric(id));
+          if (bucketed != null) {
+            entry.put(OrderIndex.OWNER, ValueContext.numeric(end));
+          }
+          orderIndex.add(id, entry);
+        }
+        return true;
+      }
+    });
+  }
+
+  /**
+   * Bucket of the owner in which the relationship from the given node goes, picked as
+   * Buckets#bucketFor does. Buckets already in the store are read once per owner.
+   *
+   * @param buckets Buckets of the owners met so far, by their properties
+   */
+  private long bucketOf(final long owner, final RelationshipType type, final long fromId,
+                        final int count, final Map<Long, Map<Map<String, Object>, Long>> buckets) {
+    Map<Map<String, Object>, Long> ownBuckets = buckets.get(owner);
+    if (ownBuckets == null) {
+      ownBuckets = Maps.newHashMap();
+      for (BatchRelationship relationship : inserter.getRelationships(owner)) {
+        if (relationship.getEndNode() == owner
+            && relationship.getType().name().equals(Buckets.BUCKET_OF.name())) {
+          ownBuckets.put(inserter.getNodeProperties(relationship.getStartNode()),
+              relationship.getStartNode());
+        }
+      }
+      buckets.put(owner, ownBuckets);
+    }
+    final Map<String, Object> properties =
+        Buckets.bucketProperties(type, Buckets.slotOf(fromId, count));
+    Long bucket = ownBuckets.get(properties);
+    if (bucket == null) {
+      bucket = inserter.createNode(properties, Buckets.BUCKET);
+      inserter.createRelationship(bucket, owner, Buckets.BUCKET_OF,
+          Collections.<String, Object>emptyMap());
+      ownBuckets.put(properties, bucket);
+    }
+    return bucket;
+  }
+
+  private BatchInserterIndex orderIndex(final RelationshipType type, final Ordered ordered) {
+    final String indexName = OrderIndex.nameOf(type, ordered);
+    BatchInserterIndex index = orderIndexes.get(indexName);
+    if (index == null) {
+      // Same config as the default one of EntityRepo
+      index = indexProvider.relationshipIndex(indexName,
+          MapUtil.stringMap(IndexManager.PROVIDER, "lucene", "type", "exact"));
+      orderIndexes.put(indexName, index);
+      LOG.info("Init index {}", indexName);
+    }
+    return index;
+  }
+
+  /**
+   * Log a progress line every given number of records
+   *
+   * @param progressInterval Number of records
+   */
+  public void setProgressInterval(int progressInterval) {
+    this.progressInterval = Math.max(1, progressInterval);
+  }
+
+  /**
+   * @return Number of records skipped so far: unparsable lines, records with a malformed value and
+   * relationships with an unknown start or end
+   */
+  public long getSkippedCount() {
+    return skipped.get();
+  }
+
+  /**
+   * Flushes the full text indexes and shuts the store down
+   */
+  @Override
+  public void close() {
+    parsers.shutdownNow();
+    for (BatchInserterIndex index : Iterables.concat(fullTextIndexes.values(),
+        orderIndexes.values())) {
+      index.flush();
+    }
+    indexProvider.shutdown();
+    inserter.shutdown();
+    LOG.info("Import done, store at {}", inserter.getStoreDir());
+  }
+
+  private void createIndexes(EntityMeta<?> meta) {
+    if (!indexedClasses.add(meta.getEntityClass())) {
+      return;
+    }
+    for (String key : meta.getExactIndexKeys()) {
+      try {
+        inserter.createDeferredSchemaIndex(meta.getLabel()).on(key).create();
+        LOG.info("Created index for {} on {}", meta.getLabelName(), key);
+      } catch (RuntimeException e) {
+        if (Throwables.getRootCause(e) instanceof AlreadyIndexedException) {
+          LOG.info("Index for {} on {} already exists", meta.getLabelName(), key);
+        } else {
+          throw e;
+        }
+      }
+    }
+    for (String indexName : meta.getFullTextIndexNames().values()) {
+      if (!fullTextIndexes.containsKey(indexName)) {
+        fullTextIndexes.put(indexName, indexProvider.nodeIndex(indexName,
+            MapUtil.stringMap(IndexManager.PROVIDER, "lucene", "type", "fulltext")));
+        LOG.info("Init index {}", indexName);
+      }
+    }
+  }
+
+  private Map<String, Long> externalIdsOf(Class<?> klass) {
+    Map<String, Long> ids = externalIds.get(klass);
+    if (ids == null) {
+      ids = Maps.newHashMap();
+      externalIds.put(klass, ids);
+    }
+    return ids;
+  }
+
+  private static Long resolve(Map<String, Long> ids, Object externalId) {
+    return externalId == null ? null : ids.get(externalId.toString());
+  }
+
+  private static Object lookup(Map<String, Object> record, String key) {
+    final Object value = record.get(key);
+    if (value != null) {
+      return value;
+    }
+    for (Map.Entry<String, Object> entry : record.entrySet()) {
+      if (entry.getKey().equalsIgnoreCase(key)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Reads the file in chunks that are parsed in parallel. Parsed chunks are handed to the writer in
+   * the order they were read, keeping at most 2 chunks per parser thread in flight.
+   */
+  private long read(File file, String name, RecordWriter writer) throws IOException {
+    final long startTime = System.currentTimeMillis();
+    final Deque<Future<List<Map<String, Object>>>> inFlight = new ArrayDeque<>();
+    long count = 0;
+    long nextProgress = progressInterval;
+
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), Charsets.UTF_8))) {
+      final RecordParser parser = file.getName().toLowerCase().endsWith(".csv") ?
+          RecordParser.csv(reader.readLine()) : RecordParser.jsonl();
+
+      List<String> chunk = readChunk(reader);
+      while (!chunk.isEmpty() || !inFlight.isEmpty()) {
+        if (!chunk.isEmpty()) {
+          inFlight.addLast(parsers.submit(parseTask(parser, chunk)));
+          chunk = readChunk(reader);
+        }
+        if (inFlight.size() >= 2 * parallelism || (chunk.isEmpty() && !inFlight.isEmpty())) {
+          for (Map<String, Object> record : await(inFlight.removeFirst())) {
+            if (!writer.write(record)) {
+              skipped.incrementAndGet();
+              continue;
+            }
+            if (++count >= nextProgress) {
+              nextProgress += progressInterval;
+              logProgress(name, count, startTime);
+            }
+          }
+        }
+      }
+    }
+    logProgress(name, count, startTime);
+    return count;
+  }
+
+  private static List<String> readChunk(BufferedReader reader) throws IOException {
+    final List<String> lines = Lists.newArrayListWithCapacity(CHUNK_SIZE);
+    String line;
+    while (lines.size() < CHUNK_SIZE && (line = reader.readLine()) != null) {
+      if (!line.trim().isEmpty()) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  private Callable<List<Map<String, Object>>> parseTask(final RecordParser parser,
+                                                        final List<String> lines) {
+    return new Callable<List<Map<String, Object>>>() {
+      @Override
+      public List<Map<String, Object>> call() {
+        final List<Map<String, Object>> records = Lists.newArrayListWithCapacity(lines.size());
+        for (String line : lines) {
+          try {
+            records.add(parser.parse(line));
+          } catch (RuntimeException e) {
+            LOG.warn("Skipping unparsable line : {}", line);
+            skipped.incrementAndGet();
+          }
+        }
+        return records;
+      }
+    };
+  }
+
+  private static List<Map<String, Object>> await(Future<List<Map<String, Object>>> parsed)
+      throws IOException {
+    try {
+      return parsed.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while parsing", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Problem parsing", e.getCause());
+    }
+  }
+
+  private static void logProgress(String name, long count, long startTime) {
+    final long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+    LOG.info("{} : {} records imported in {} s ({} /s)", name, count, elapsed / 1000,
+        count * 1000 / elapsed);
+  }
+
+  private interface RecordWriter {
+    /**
+     * @return false if the record was skipped
+     */
+    boolean write(Map<String, Object> record);
+  }
+
+  /**
+   * Usage: BulkImporter storeDir [--nodes=entityClass=file]... [--relationships=name:startClass:endClass=file]...
+   * [--relationships=relationshipClass=file]...
+   * <p/>
+   * Files are imported in the given order, so nodes have to come before the relationships that
+   * refer to them. Relationships given by their BaseRelationship class, instantiated through its
+   * no-arg constructor, get their order index and buckets.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("Usage: BulkImporter storeDir [--nodes=entityClass=file]... "
+          + "[--relationships=name:startClass:endClass=file]... "
+          + "[--relationships=relationshipClass=file]...");
+      System.exit(1);
+    }
+
+    try (BulkImporter importer = new BulkImporter(args[0])) {
+      for (String arg : Arrays.asList(args).subList(1, args.length)) {
+        final String[] spec = arg.split("=", 3);
+        if (spec.length != 3) {
+          throw new IllegalArgumentException("Cannot understand " + arg);
+        }
+        final File file = new File(spec[2]);
+        if ("--nodes".equals(spec[0])) {
+          importer.importNodes(Class.forName(spec[1]), file);
+        } else if ("--relationships".equals(spec[0]) && !spec[1].contains(":")) {
+          final Constructor<?> constructor = Class.forName(spec[1]).getDeclaredConstructor();
+          constructor.setAccessible(true);
+          importer.importRelationships((BaseRelationship<?, ?>) constructor.newInstance(), file);
+        } else if ("--relationships".equals(spec[0])) {
+          final String[] type = spec[1].split(":");
+          importer.importRelationships(new BasicRelationType<>(Class.forName(type[1]),
+              Class.forName(type[2]), type[0]), file);
+        } else {
+          throw new IllegalArgumentException("Cannot understand " + arg);
+        }
+      }
+    }
+  }
+}
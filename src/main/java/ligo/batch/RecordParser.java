@@ -0,0 +1,164 @@
+package ligo.batch;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses one line of a JSONL or CSV import file into a map of raw values
+ */
+class RecordParser {
+
+  private final boolean csv;
+  private final List<String> header;
+
+  private RecordParser(boolean csv, List<String> header) {
+    this.csv = csv;
+    this.header = header;
+  }
+
+  static RecordParser jsonl() {
+    return new RecordParser(false, null);
+  }
+
+  static RecordParser csv(String headerLine) {
+    final List<String> header = Lists.newArrayList();
+    for (String column : splitCsv(headerLine)) {
+      header.add(column.trim());
+    }
+    return new RecordParser(true, header);
+  }
+
+  /**
+   * @param line Non blank line
+   * @return Raw values, either String, Number or Boolean
+   */
+  Map<String, Object> parse(String line) {
+    return csv ? parseCsv(line) : parseJson(line);
+  }
+
+  private Map<String, Object> parseJson(String line) {
+    final JsonObject json = new JsonParser().parse(line).getAsJsonObject();
+    final Map<String, Object> record = Maps.newHashMap();
+    for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+      if (!entry.getValue().isJsonPrimitive()) {
+        continue;
+      }
+      final JsonPrimitive primitive = entry.getValue().getAsJsonPrimitive();
+      final Object value;
+      if (primitive.isBoolean()) {
+        value = primitive.getAsBoolean();
+      } else if (primitive.isNumber()) {
+        final String number = primitive.getAsString();
+        value = number.contains(".") || number.contains("e") || number.contains("E") ?
+            (Object) primitive.getAsDouble() : (Object) primitive.getAsLong();
+      } else {
+        value = primitive.getAsString();
+      }
+      record.put(entry.getKey(), value);
+    }
+    return record;
+  }
+
+  private Map<String, Object> parseCsv(String line) {
+    final List<String> values = splitCsv(line);
+    final Map<String, Object> record = Maps.newHashMap();
+    for (int i = 0; i < header.size() && i < values.size(); i++) {
+      final String value = values.get(i);
+      if (!value.isEmpty()) {
+        record.put(header.get(i), value);
+      }
+    }
+    return record;
+  }
+
+  /**
+   * Splits a single CSV line. Quoted values may contain commas and doubled quotes, but not line
+   * breaks.
+   */
+  static List<String> splitCsv(String line) {
+    final List<String> values = Lists.newArrayList();
+    final StringBuilder current = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      final char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          current.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          current.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        values.add(current.toString());
+        current.setLength(0);
+      } else {
+        current.append(c);
+      }
+    }
+    values.add(current.toString());
+    return values;
+  }
+
+  /**
+   * Converts a raw value into the type of the field it is going to be stored for, so that nodes
+   * written by the importer read back exactly like nodes written by EntityRepo.
+   *
+   * @param type Field type
+   * @param raw  Raw value
+   * @return Converted value, null if it cannot be represented
+   * @throws IllegalArgumentException if the value is malformed for the type, e.g. a
+   *                                  NumberFormatException
+   */
+  static Object convert(Class<?> type, Object raw) {
+    if (raw == null) {
+      return null;
+    }
+    final String value = raw.toString();
+    if (type == String.class) {
+      return value;
+    } else if (type == int.class || type == Integer.class) {
+      return raw instanceof Number ? ((Number) raw).intValue() : Integer.parseInt(value.trim());
+    } else if (type == long.class || type == Long.class) {
+      return raw instanceof Number ? ((Number) raw).longValue() : Long.parseLong(value.trim());
+    } else if (type == double.class || type == Double.class) {
+      return raw instanceof Number ? ((Number) raw).doubleValue() : Double.parseDouble(value.trim());
+    } else if (type == float.class || type == Float.class) {
+      return raw instanceof Number ? ((Number) raw).floatValue() : Float.parseFloat(value.trim());
+    } else if (type == boolean.class || type == Boolean.class) {
+      if (raw instanceof Boolean) {
+        return raw;
+      }
+      if (!"true".equalsIgnoreCase(value.trim()) && !"false".equalsIgnoreCase(value.trim())) {
+        throw new IllegalArgumentException("Not a boolean : " + value);
+      }
+      return Boolean.valueOf(value.trim());
+    }
+    return null;
+  }
+
+  /**
+   * Relationship properties have no declared type. CSV values that look like integers are stored
+   * as long, everything else as read.
+   */
+  static Object convertUntyped(Object raw) {
+    if (raw instanceof String) {
+      try {
+        return Long.parseLong(((String) raw).trim());
+      } catch (NumberFormatException e) {
+        return raw;
+      }
+    }
+    return raw;
+  }
+}
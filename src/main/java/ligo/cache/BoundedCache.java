@@ -0,0 +1,215 @@
+package ligo.cache;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory cache bounded by a number of entries and a total weight, with an optional expiry of
+ * the entries. Entries are kept in access order, and the eviction policy picks the victim when a
+ * bound is exceeded. All operations are synchronized on the cache.
+ * <p/>
+ * Values loaded outside of the cache can be put conditionally with the version read before loading,
+ * so that an invalidation happening meanwhile is not undone by a stale value.
+ */
+public class BoundedCache<K, V> {
+
+  /**
+   * Computes the weight of an entry, usually an estimate of its size in bytes
+   */
+  public interface Weigher<K, V> {
+    long weigh(K key, V value);
+  }
+
+  /**
+   * Picks the entry to evict
+   */
+  public enum Eviction {
+    /**
+     * Least recently used entry
+     */
+    LRU,
+    /**
+     * Least frequently used entry among the {@link #LFU_SAMPLE} least recently used ones, so that
+     * an eviction does not have to scan the whole cache
+     */
+    LFU
+  }
+
+  static final int LFU_SAMPLE = 8;
+
+  private final int maxEntries;
+  private final long maxWeight;
+  private final Weigher<? super K, ? super V> weigher;
+  private final Eviction eviction;
+  private final long expireAfterNanos;
+  private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long weight = 0;
+  private long version = 0;
+  private long hitCount = 0;
+  private long missCount = 0;
+  private long evictionCount = 0;
+
+  /**
+   * @param maxEntries Maximum number of entries
+   * @param maxWeight  Maximum total weight of the entries
+   * @param weigher    Weight of one entry
+   * @param eviction   Eviction policy
+   */
+  public BoundedCache(int maxEntries, long maxWeight, Weigher<? super K, ? super V> weigher,
+                      Eviction eviction) {
+    this(maxEntries, maxWeight, weigher, eviction, 0);
+  }
+
+  /**
+   * @param maxEntries        Maximum number of entries
+   * @param maxWeight         Maximum total weight of the entries
+   * @param weigher           Weight of one entry
+   * @param eviction          Eviction policy
+   * @param expireAfterMillis Time after which an entry expires once put, 0 for never
+   */
+  public BoundedCache(int maxEntries, long maxWeight, Weigher<? super K, ? super V> weigher,
+                      Eviction eviction, long expireAfterMillis) {
+    Preconditions.checkArgument(maxEntries > 0, "maxEntries should be positive");
+    Preconditions.checkArgument(maxWeight > 0, "maxWeight should be positive");
+    Preconditions.checkArgument(expireAfterMillis >= 0, "expireAfterMillis should not be negative");
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+    this.weigher = Preconditions.checkNotNull(weigher);
+    this.eviction = Preconditions.checkNotNull(eviction);
+    this.expireAfterNanos = TimeUnit.MILLISECONDS.toNanos(expireAfterMillis);
+  }
+
+  /**
+   * @return Cached value, null on a miss
+   */
+  public synchronized V get(K key) {
+    final Entry<V> entry = entries.get(key);
+    if (entry != null && entry.isExpired()) {
+      entries.remove(key);
+      weight -= entry.weight;
+      evictionCount++;
+      missCount++;
+      return null;
+    }
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    entry.frequency++;
+    return entry.value;
+  }
+
+  /**
+   * @return Version to pass to {@link #put(Object, Object, long)} for a value about to be loaded
+   */
+  public synchronized long version() {
+    return version;
+  }
+
+  /**
+   * Caches the value, unless the cache was invalidated since the given version was read
+   *
+   * @return true if the value was cached
+   */
+  public synchronized boolean put(K key, V value, long loadVersion) {
+    if (loadVersion != version) {
+      return false;
+    }
+    put(key, value);
+    return true;
+  }
+
+  /**
+   * Caches the value. A value heavier than the maximum weight is not cached at all.
+   */
+  public synchronized void put(K key, V value) {
+    final long entryWeight = weigher.weigh(key, value);
+    final Entry<V> previous = entries.remove(key);
+    if (previous != null) {
+      weight -= previous.weight;
+    }
+    if (entryWeight > maxWeight) {
+      return;
+    }
+    entries.put(key, new Entry<>(value, entryWeight,
+        expireAfterNanos == 0 ? Long.MAX_VALUE : System.nanoTime() + expireAfterNanos));
+    weight += entryWeight;
+    while (entries.size() > maxEntries || weight > maxWeight) {
+      evict(key);
+    }
+  }
+
+  public synchronized void invalidate(K key) {
+    version++;
+    final Entry<V> entry = entries.remove(key);
+    if (entry != null) {
+      weight -= entry.weight;
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    version++;
+    entries.clear();
+    weight = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized CacheStats stats() {
+    return new CacheStats(hitCount, missCount, evictionCount, entries.size(), weight);
+  }
+
+  /**
+   * Evicts one entry other than the one just put, which would otherwise always be the least
+   * frequently used
+   */
+  private void evict(K added) {
+    final Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+    K victim = null;
+    if (eviction == Eviction.LRU) {
+      victim = iterator.next().getKey();
+      if (victim.equals(added)) {
+        victim = iterator.next().getKey();
+      }
+    } else {
+      long lowest = Long.MAX_VALUE;
+      for (int i = 0; i < LFU_SAMPLE && iterator.hasNext(); i++) {
+        final Map.Entry<K, Entry<V>> candidate = iterator.next();
+        if (candidate.getKey().equals(added)) {
+          continue;
+        }
+        if (candidate.getValue().frequency < lowest) {
+          lowest = candidate.getValue().frequency;
+          victim = candidate.getKey();
+        }
+      }
+    }
+    weight -= entries.remove(victim).weight;
+    evictionCount++;
+  }
+
+  private static class Entry<V> {
+    private final V value;
+    private final long weight;
+    private final long expiresAt;
+    private long frequency = 0;
+
+    private Entry(V value, long weight, long expiresAt) {
+      this.value = value;
+      this.weight = weight;
+      this.expiresAt = expiresAt;
+    }
+
+    private boolean isExpired() {
+      return expiresAt != Long.MAX_VALUE && System.nanoTime() - expiresAt >= 0;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package ligo.cache;
+
+/**
+ * Snapshot of the counters of a cache
+ */
+public class CacheStats {
+
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+  private final int size;
+  private final long weight;
+
+  CacheStats(long hitCount, long missCount, long evictionCount, int size, long weight) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+    this.size = size;
+    this.weight = weight;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * @return Number of entries dropped to stay within the bounds or once expired. Invalidations
+   * are not counted.
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public long getWeight() {
+    return weight;
+  }
+
+  /**
+   * @return Ratio of hits over lookups, 1 if there was no lookup yet
+   */
+  public double getHitRate() {
+    final long lookups = hitCount + missCount;
+    return lookups == 0 ? 1.0 : (double) hitCount / lookups;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+        + ", size=" + size + ", weight=" + weight + "}";
+  }
+}
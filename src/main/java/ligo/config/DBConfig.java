@@ -5,64 +5,93 @@ import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Sets;
 import ligo.meta.Entity;
 import ligo.meta.Indexed;
+import ligo.metrics.RepoMetrics;
 import ligo.utils.EntityUtils;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
 import org.neo4j.graphdb.factory.GraphDatabaseSettings;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexManager;
+import org.neo4j.graphdb.schema.ConstraintDefinition;
+import org.neo4j.graphdb.schema.ConstraintType;
 import org.neo4j.graphdb.schema.IndexDefinition;
 import org.neo4j.helpers.collection.MapUtil;
-import org.reflections.ReflectionUtils;
 import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Configures Neo start/shut
+ * Configures Neo start/shut. Each instance runs its own embedded DB, under its own store directory,
+ * along with the registry of its full text indexes.
  */
 public class DBConfig {
 
   private static final Logger LOG = LoggerFactory.getLogger(DBConfig.class);
+  private static final int DEFAULT_BATCH_SIZE = 1000;
+  private static final int DEFAULT_MAX_RESULTS = 1000;
+  private static final int DEFAULT_INDEX_STARTUP_TIMEOUT = 60;
+  private static final int DEFAULT_INDEX_RETRIES = 3;
+  private static final int DEFAULT_HOT_SET_SIZE = 10000;
+  private static final int DEFAULT_HOT_SET_SAMPLE_RATE = 16;
+  private static final String DB_PROP_FILE = "db.properties";
 
-  public static boolean isDbOn = false;
-  private static String dbPath;
-  private static ImmutableMap<String, Index<Node>> FULLTEXT_BY_NAME_MAP;
-  private static ImmutableMultimap<Class<?>, Index<Node>> FULLTEXT_BY_CLASS_MAP;
-  private final String DB_PROP_FILE = "db.properties";
-  private Properties dbProperties = new Properties();
+  private volatile boolean isDbOn = false;
+  private final String dbPath;
+  private final Properties dbProperties = new Properties();
+  private ImmutableMap<String, Index<Node>> fullTextByNameMap;
+  private ImmutableMultimap<Class<?>, Index<Node>> fullTextByClassMap;
   private GraphDatabaseService db;
+  private IndexMonitor indexMonitor;
+  private HotSet hotSet;
+  private RepoMetrics metrics = RepoMetrics.NOOP;
 
+  /**
+   * DB under the "dbPath" of db.properties
+   */
   public DBConfig() {
-    try {
-      dbProperties.load(DBConfig.class.getClassLoader().getResourceAsStream(DB_PROP_FILE));
-      dbPath = dbProperties.getProperty("dbPath");
-    } catch (IOException e) {
-      LOG.error("Problem loading DB properties. Check db.properties on classpath", e);
-    }
+    loadProperties();
+    this.dbPath = dbProperties.getProperty("dbPath");
+    registerShutdownHook();
     start();
   }
 
+  /**
+   * DB under the given store directory, configured by the other properties of db.properties
+   *
+   * @param dbPath Store directory
+   */
   public DBConfig(String dbPath) {
+    loadProperties();
     this.dbPath = dbPath;
+    registerShutdownHook();
     start();
   }
 
+  private void loadProperties() {
+    try {
+      dbProperties.load(DBConfig.class.getClassLoader().getResourceAsStream(DB_PROP_FILE));
+    } catch (IOException e) {
+      LOG.error("Problem loading DB properties. Check db.properties on classpath", e);
+    }
+  }
+
   /**
    * Get the full text search index by it's name
    *
    * @param indexName Exact name of the index.This will be found on the @Indexed annotation
    * @return Index
    */
-  public static Index<Node> getFullTextIndex(String indexName) {
-    return FULLTEXT_BY_NAME_MAP.get(indexName);
+  public Index<Node> getFullTextIndex(String indexName) {
+    return fullTextByNameMap.get(indexName);
   }
 
   /**
@@ -71,30 +100,185 @@ public class DBConfig {
    * @param klass Class
    * @return Collection of Indexes
    */
-  public static Collection<Index<Node>> getFullTextIndexes(Class<?> klass) {
-    return FULLTEXT_BY_CLASS_MAP.get(klass);
+  public Collection<Index<Node>> getFullTextIndexes(Class<?> klass) {
+    return fullTextByClassMap.get(klass);
+  }
+
+  /**
+   * Number of writes committed per transaction by batch operations. Read from "batchSize" in
+   * db.properties, defaults to 1000.
+   *
+   * @return batch size
+   */
+  public int getBatchSize() {
+    return getIntProperty("batchSize", DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Cap on the number of entities returned by one cursor. Read from "maxResults" in db.properties,
+   * defaults to 1000.
+   *
+   * @return result size cap
+   */
+  public int getMaxResults() {
+    return getIntProperty("maxResults", DEFAULT_MAX_RESULTS);
+  }
+
+  /**
+   * What start does while schema indexes are not online. Read from "indexStartup" in
+   * db.properties, one of await, timeout or route, defaults to timeout.
+   *
+   * @return startup mode
+   */
+  public IndexMonitor.StartupMode getIndexStartupMode() {
+    final String value = dbProperties.getProperty("indexStartup");
+    if (value == null || value.trim().isEmpty()) {
+      return IndexMonitor.StartupMode.TIMEOUT;
+    }
+    try {
+      return IndexMonitor.StartupMode.valueOf(value.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Ignoring invalid value {} for indexStartup. Using timeout", value);
+      return IndexMonitor.StartupMode.TIMEOUT;
+    }
   }
 
-  public void start() {
+  /**
+   * Seconds start waits for schema indexes in timeout mode. Read from "indexStartupTimeout" in
+   * db.properties, defaults to 60.
+   *
+   * @return timeout in seconds
+   */
+  public int getIndexStartupTimeout() {
+    return getIntProperty("indexStartupTimeout", DEFAULT_INDEX_STARTUP_TIMEOUT);
+  }
+
+  private int getIntProperty(String key, int defaultValue) {
+    final String value = dbProperties.getProperty(key);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      LOG.warn("Ignoring invalid value {} for {}. Using {}", value, key, defaultValue);
+      return defaultValue;
+    }
+  }
+
+  public synchronized void start() {
+    if (isDbOn) {
+      return;
+    }
     db =
         new GraphDatabaseFactory().newEmbeddedDatabaseBuilder(dbPath)
             .setConfig(GraphDatabaseSettings.allow_store_upgrade, "true")
             .setConfig(GraphDatabaseSettings.node_auto_indexing, "true").newGraphDatabase();
     initIndexes(db);
+    if (Boolean.parseBoolean(dbProperties.getProperty("metrics", "false").trim())) {
+      metrics = new RepoMetrics(dbPath);
+    }
+    indexMonitor = new IndexMonitor(db, getIndexStartupMode(),
+        getIntProperty("indexRetries", DEFAULT_INDEX_RETRIES));
+    awaitIndexes();
+    if (hotSet == null) {
+      hotSet = newHotSet();
+    }
+    if (hotSet.isEnabled()) {
+      hotSet.warmUp(db, getIntProperty("warmUpThreads", Runtime.getRuntime().availableProcessors()));
+    }
     isDbOn = true;
-    registerShutdownHook(db);
   }
 
-  private void registerShutdownHook(final GraphDatabaseService db) {
+  /**
+   * Shuts the DB down, along with its metrics. It starts again on the next {@link #getDb()}, as a
+   * new DB with new metrics. Repos built on the previous one have to be rebuilt: they keep the DB
+   * they were built with, on which every operation fails with DatabaseShutdownException.
+   */
+  public synchronized void shutdown() {
+    if (isDbOn) {
+      LOG.info("DB {} going down. Bye!", dbPath);
+      isDbOn = false;
+      hotSet.save();
+      indexMonitor.shutdown();
+      metrics.shutdown();
+      metrics = RepoMetrics.NOOP;
+      db.shutdown();
+    }
+  }
+
+  /**
+   * Hot set saved to "hotSetFile" of db.properties, if set, of the "hotSetSize" most read nodes
+   * (default 10000), sampling one read in "hotSetSampleRate" (default 16)
+   */
+  private HotSet newHotSet() {
+    final String hotSetFile = dbProperties.getProperty("hotSetFile");
+    return new HotSet(hotSetFile == null || hotSetFile.trim().isEmpty() ? null :
+        new File(hotSetFile.trim()), getIntProperty("hotSetSize", DEFAULT_HOT_SET_SIZE),
+        getIntProperty("hotSetSampleRate", DEFAULT_HOT_SET_SAMPLE_RATE));
+  }
+
+  private void awaitIndexes() {
+    switch (indexMonitor.getMode()) {
+      case AWAIT:
+        if (!indexMonitor.awaitOnline(Long.MAX_VALUE)) {
+          LOG.error("Starting with failed indexes {}", indexMonitor.getStates());
+        }
+        break;
+      case TIMEOUT:
+        if (!indexMonitor.awaitOnline(TimeUnit.SECONDS.toMillis(getIndexStartupTimeout()))) {
+          LOG.warn("Starting with indexes not online {}. Lookups on them scan their label.",
+              indexMonitor.getStates());
+        }
+        break;
+      case ROUTE:
+        indexMonitor.refresh();
+        break;
+    }
+  }
+
+  private void registerShutdownHook() {
     Runtime.getRuntime().addShutdownHook(new Thread() {
       @Override
       public void run() {
-        LOG.info("DB going down. Bye!");
-        db.shutdown();
+        shutdown();
       }
     });
   }
 
+  public boolean isDbOn() {
+    return isDbOn;
+  }
+
+  /**
+   * @return Store directory of the DB
+   */
+  public String getDbPath() {
+    return dbPath;
+  }
+
+  /**
+   * @return State of the schema indexes
+   */
+  public IndexMonitor getIndexMonitor() {
+    return indexMonitor;
+  }
+
+  /**
+   * @return Most read nodes, recorded by the repos and warmed up on start
+   */
+  public HotSet getHotSet() {
+    return hotSet;
+  }
+
+  /**
+   * @return Metrics of the repo operations, enabled by "metrics=true" in db.properties. No-op by
+   * default, and once the DB is shut down.
+   */
+  public RepoMetrics getMetrics() {
+    return metrics;
+  }
+
   public GraphDatabaseService getDb() {
     if (!isDbOn) {
       start();
@@ -104,8 +288,17 @@ public class DBConfig {
 
   private void initIndexes(final GraphDatabaseService db) {
     final String[] modelPackages = ((String) dbProperties.get("modelPackages")).split(",");
+    final Set<Class<?>> registered = EntityRegistry.load(DBConfig.class.getClassLoader());
     Set<Class<?>> entities = new HashSet<>();
-    for (String modelPackage : modelPackages) {
+    for (String packageName : modelPackages) {
+      final String modelPackage = packageName.trim();
+      final Set<Class<?>> inPackage = EntityRegistry.inPackage(registered, modelPackage);
+      if (!inPackage.isEmpty()) {
+        entities.addAll(inPackage);
+        continue;
+      }
+      // Compiled without the registry processor
+      LOG.info("No registered entity in {}, scanning the classpath", modelPackage);
       Reflections reflections = new Reflections(modelPackage);
       entities.addAll(reflections.getTypesAnnotatedWith(Entity.class));
     }
@@ -119,8 +312,7 @@ public class DBConfig {
       final Set<String> nodeIndexNames = Sets.newHashSet(db.index().nodeIndexNames());
 
       for (Class<?> entity : entities) {
-        Set<Field> indexedFields = ReflectionUtils.
-            getAllFields(entity, ReflectionUtils.withAnnotation(Indexed.class));
+        Set<Field> indexedFields = EntityUtils.extractIndexable(entity);
 
         final Label label = DynamicLabel.label(EntityUtils.extractNodeLabel(entity));
         final Iterable<IndexDefinition> schemaIndexes = db.schema().getIndexes(label);
@@ -133,6 +325,11 @@ public class DBConfig {
 
               String indexableProperty = indexedField.getName().toLowerCase();
 
+              if (indexedAnnotation.unique()) {
+                createUniqueConstraint(db, label, indexableProperty);
+                break;
+              }
+
               for (IndexDefinition schemaIndex : schemaIndexes) {
                 if (schemaIndex.getPropertyKeys().iterator().hasNext()
                     && schemaIndex.getPropertyKeys().iterator().next().equals(indexableProperty)) {
@@ -158,12 +355,35 @@ public class DBConfig {
               break;
           }
         }
-        FULLTEXT_BY_NAME_MAP = fullTextIndexBuilder.build();
-        FULLTEXT_BY_CLASS_MAP = fullTextByClassBuilder.build();
       }
 
       tx.success();
     }
+    fullTextByNameMap = fullTextIndexBuilder.build();
+    fullTextByClassMap = fullTextByClassBuilder.build();
+  }
+
+  /**
+   * Creates the uniqueness constraint of the label on the property, unless it exists. A plain
+   * index on the same property is dropped first, as the constraint comes with its own index.
+   */
+  private void createUniqueConstraint(final GraphDatabaseService db, final Label label,
+                                      final String property) {
+    for (ConstraintDefinition constraint : db.schema().getConstraints(label)) {
+      if (constraint.isConstraintType(ConstraintType.UNIQUENESS)
+          && constraint.getPropertyKeys().iterator().next().equals(property)) {
+        return;
+      }
+    }
+    for (IndexDefinition schemaIndex : db.schema().getIndexes(label)) {
+      if (!schemaIndex.isConstraintIndex()
+          && schemaIndex.getPropertyKeys().iterator().next().equals(property)) {
+        schemaIndex.drop();
+        LOG.info("Dropped index for {} on {}, replaced by a constraint", label, property);
+      }
+    }
+    db.schema().constraintFor(label).assertPropertyIsUnique(property).create();
+    LOG.info("Created uniqueness constraint for {} on {}", label, property);
   }
 
 }
@@ -0,0 +1,68 @@
+package ligo.config;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.Resources;
+import ligo.processor.EntityRegistryProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Set;
+
+/**
+ * Reads the @Entity classes listed at compile time by {@link EntityRegistryProcessor}
+ */
+final class EntityRegistry {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EntityRegistry.class);
+
+  //Ensure that no one instantiates this util class
+  private EntityRegistry() {
+  }
+
+  /**
+   * @param classLoader Class loader of the registries and entities
+   * @return Entities of all the registries on the classpath, empty if there are none. Listed
+   * classes that cannot be loaded are skipped.
+   */
+  static Set<Class<?>> load(final ClassLoader classLoader) {
+    final Set<Class<?>> entities = Sets.newHashSet();
+    try {
+      final Enumeration<URL> registries =
+          classLoader.getResources(EntityRegistryProcessor.REGISTRY);
+      while (registries.hasMoreElements()) {
+        final URL registry = registries.nextElement();
+        for (String line : Resources.readLines(registry, Charsets.UTF_8)) {
+          final String className = line.trim();
+          if (className.isEmpty()) {
+            continue;
+          }
+          try {
+            entities.add(Class.forName(className, false, classLoader));
+          } catch (ClassNotFoundException e) {
+            LOG.warn("Skipping entity {} of {}, class not found", className, registry);
+          }
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Problem reading the entity registries, falling back to scanning", e);
+    }
+    return entities;
+  }
+
+  /**
+   * @return Entities of the package or its subpackages
+   */
+  static Set<Class<?>> inPackage(final Set<Class<?>> entities, final String modelPackage) {
+    final Set<Class<?>> inPackage = Sets.newHashSet();
+    for (Class<?> entity : entities) {
+      if (entity.getName().startsWith(modelPackage + ".")) {
+        inPackage.add(entity);
+      }
+    }
+    return inPackage;
+  }
+}
@@ -0,0 +1,245 @@
+package ligo.config;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import ligo.utils.Buckets;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ids of the most read nodes, sampled from repo reads and saved to a file on shutdown. On the next
+ * start, the nodes are read again along with their properties and first relationships by parallel
+ * readers, so that their records are cached before the first requests.
+ */
+public class HotSet {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HotSet.class);
+  /**
+   * Relationships read per node on warm-up, so that a supernode does not take the whole warm-up
+   */
+  private static final int RELATIONSHIPS_PER_NODE = 100;
+
+  private final File file;
+  private final int maxSize;
+  private final int sampleRate;
+  private final ConcurrentMap<Long, AtomicInteger> reads = Maps.newConcurrentMap();
+  private volatile long warmUpMillis = -1;
+
+  /**
+   * @param file       File of the hot set, null to disable it
+   * @param maxSize    Maximum number of saved node ids
+   * @param sampleRate One read in sampleRate is recorded
+   */
+  public HotSet(final File file, final int maxSize, final int sampleRate) {
+    this.file = file;
+    this.maxSize = maxSize;
+    this.sampleRate = Math.max(1, sampleRate);
+  }
+
+  public boolean isEnabled() {
+    return file != null;
+  }
+
+  /**
+   * Counts a read of the node, one time in sampleRate. Once 4 times maxSize nodes are tracked, the
+   * counts decay to make room for the new ones, see {@link #decay()}.
+   *
+   * @param id Node id
+   */
+  public void record(final long id) {
+    if (file == null || sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+      return;
+    }
+    AtomicInteger count = reads.get(id);
+    if (count == null) {
+      if (reads.size() >= 4 * maxSize) {
+        decay();
+      }
+      final AtomicInteger first = new AtomicInteger();
+      count = reads.putIfAbsent(id, first);
+      if (count == null) {
+        count = first;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  /**
+   * Halves all the counts, until some nodes are left with none and are evicted. Nodes read often
+   * long ago thus give way to the ones read lately. Increments racing with the halving may be lost.
+   */
+  private synchronized void decay() {
+    while (!reads.isEmpty() && reads.size() >= 4 * maxSize) {
+      for (Map.Entry<Long, AtomicInteger> entry : reads.entrySet()) {
+        final int halved = entry.getValue().get() / 2;
+        entry.getValue().set(halved);
+        if (halved == 0) {
+          reads.remove(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+  }
+
+  /**
+   * @return Ids of the most read nodes, most read first, at most maxSize
+   */
+  public List<Long> hottest() {
+    final List<Map.Entry<Long, AtomicInteger>> entries = Lists.newArrayList(reads.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<Long, AtomicInteger>>() {
+      @Override
+      public int compare(Map.Entry<Long, AtomicInteger> a, Map.Entry<Long, AtomicInteger> b) {
+        return Integer.compare(b.getValue().get(), a.getValue().get());
+      }
+    });
+    final List<Long> ids = Lists.newArrayList();
+    for (Map.Entry<Long, AtomicInteger> entry : entries) {
+      if (ids.size() == maxSize) {
+        break;
+      }
+      ids.add(entry.getKey());
+    }
+    return ids;
+  }
+
+  /**
+   * Writes the hottest node ids to the file, one per line, unless none was recorded so that the
+   * hot set of the previous run is kept
+   */
+  public void save() {
+    final List<Long> ids = hottest();
+    if (file == null || ids.isEmpty()) {
+      return;
+    }
+    final File tmp = new File(file.getPath() + ".tmp");
+    try {
+      Files.write(Joiner.on('\n').join(ids), tmp, Charsets.UTF_8);
+      Files.move(tmp, file);
+      LOG.info("Saved {} hot nodes to {}", ids.size(), file);
+    } catch (IOException e) {
+      LOG.warn("Could not save the hot set to {}", file, e);
+    }
+  }
+
+  /**
+   * @return Node ids of the file, empty if there is none or it cannot be read
+   */
+  List<Long> load() {
+    final List<Long> ids = Lists.newArrayList();
+    if (file == null || !file.isFile()) {
+      return ids;
+    }
+    try {
+      for (String line : Files.readLines(file, Charsets.UTF_8)) {
+        try {
+          ids.add(Long.parseLong(line.trim()));
+        } catch (NumberFormatException e) {
+          LOG.debug("Skipping line {} of {}", line, file);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not read the hot set from {}", file, e);
+    }
+    return ids;
+  }
+
+  /**
+   * Reads the nodes of the file, their properties, relationships and the properties of these, with
+   * the given number of readers. Blocks until they are done.
+   *
+   * @param db      DB
+   * @param readers Number of reader threads
+   * @return Number of nodes read
+   */
+  public int warmUp(final GraphDatabaseService db, final int readers) {
+    final List<Long> ids = load();
+    if (ids.isEmpty()) {
+      return 0;
+    }
+    final long start = System.currentTimeMillis();
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, readers),
+        new ThreadFactoryBuilder().setNameFormat("ligo-warm-up-%d").setDaemon(true).build());
+    int warmed = 0;
+    try {
+      final int chunkSize = (ids.size() + readers - 1) / Math.max(1, readers);
+      final List<Callable<Integer>> chunks = Lists.newArrayList();
+      for (final List<Long> chunk : Lists.partition(ids, Math.max(1, chunkSize))) {
+        chunks.add(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            return touch(db, chunk);
+          }
+        });
+      }
+      for (Future<Integer> chunk : executor.invokeAll(chunks)) {
+        warmed += chunk.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      LOG.warn("Warm-up failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    warmUpMillis = System.currentTimeMillis() - start;
+    LOG.info("Warmed up {} of {} hot nodes in {} ms", warmed, ids.size(), warmUpMillis);
+    return warmed;
+  }
+
+  private static int touch(final GraphDatabaseService db, final List<Long> ids) {
+    int touched = 0;
+    try (Transaction tx = db.beginTx()) {
+      for (Long id : ids) {
+        try {
+          final Node node = db.getNodeById(id);
+          for (String key : node.getPropertyKeys()) {
+            node.getProperty(key);
+          }
+          for (Relationship relationship : Iterables.limit(Buckets.relationships(node),
+              RELATIONSHIPS_PER_NODE)) {
+            for (String key : relationship.getPropertyKeys()) {
+              relationship.getProperty(key);
+            }
+            Buckets.otherNode(relationship, node).getLabels();
+          }
+          touched++;
+        } catch (NotFoundException e) {
+          LOG.debug("Hot node {} is gone", id);
+        }
+      }
+      tx.success();
+    }
+    return touched;
+  }
+
+  /**
+   * @return Duration of the last warm-up in milliseconds, -1 if there was none
+   */
+  public long getWarmUpMillis() {
+    return warmUpMillis;
+  }
+}
@@ -0,0 +1,275 @@
+package ligo.config;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import ligo.exceptions.IndexNotOnlineException;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.schema.IndexDefinition;
+import org.neo4j.graphdb.schema.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the state of the schema indexes of a DB. Indexes are populated in the background once
+ * created, and lookups on them scan their label until they are online. While any index is not
+ * online, the states are refreshed in the background every second, whatever the startup mode.
+ * Failed indexes are dropped and created again, up to a number of retries. Neo4j 2.0 reports the
+ * state of a population but not its progress.
+ */
+public class IndexMonitor {
+
+  /**
+   * How DBConfig starts while indexes are not online
+   */
+  public enum StartupMode {
+    /**
+     * Start once all indexes are online, or failed beyond their retries
+     */
+    AWAIT,
+    /**
+     * Start once all indexes are online, or after the startup timeout. Lookups on the indexes not
+     * online yet scan their label.
+     */
+    TIMEOUT,
+    /**
+     * Start at once. Lookups on the indexes not online yet fail with IndexNotOnlineException.
+     */
+    ROUTE
+  }
+
+  private static final Logger LOG = LoggerFactory.getLogger(IndexMonitor.class);
+  private static final long REFRESH_INTERVAL_MILLIS = 1000;
+  private static final long AWAIT_POLL_MILLIS = 100;
+
+  private final GraphDatabaseService db;
+  private final StartupMode mode;
+  private final int maxRetries;
+  private final Map<String, Integer> retriesByIndex = Maps.newConcurrentMap();
+  private final Set<String> givenUp = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+  private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("ligo-index-monitor").setDaemon(true).build());
+  private volatile ImmutableMap<String, Schema.IndexState> states = ImmutableMap.of();
+
+  /**
+   * @param db         DB
+   * @param mode       Startup mode, which also decides what lookups on indexes not online do
+   * @param maxRetries Number of times a failed index is created again
+   */
+  public IndexMonitor(final GraphDatabaseService db, final StartupMode mode,
+                      final int maxRetries) {
+    this.db = db;
+    this.mode = mode;
+    this.maxRetries = maxRetries;
+  }
+
+  /**
+   * Reads the state of the indexes, and creates the failed ones again if they have retries left.
+   * Schedules the next refresh if any index is not online. Has to be called outside of any
+   * transaction.
+   */
+  public synchronized void refresh() {
+    final ImmutableMap.Builder<String, Schema.IndexState> builder = ImmutableMap.builder();
+    final List<IndexDefinition> failed = Lists.newArrayList();
+    try (Transaction tx = db.beginTx()) {
+      for (IndexDefinition index : db.schema().getIndexes()) {
+        final Schema.IndexState state = db.schema().getIndexState(index);
+        builder.put(nameOf(index), state);
+        if (state == Schema.IndexState.FAILED) {
+          LOG.warn("Index {} failed: {}", nameOf(index), db.schema().getIndexFailure(index));
+          failed.add(index);
+        }
+      }
+      tx.success();
+    }
+    states = builder.build();
+    for (IndexDefinition index : failed) {
+      retry(index);
+    }
+    if (getOnlineCount() < states.size()) {
+      refreshLater();
+    }
+  }
+
+  private void retry(final IndexDefinition index) {
+    final String name = nameOf(index);
+    if (givenUp.contains(name)) {
+      return;
+    }
+    final int attempt = retriesByIndex.containsKey(name) ? retriesByIndex.get(name) + 1 : 1;
+    if (index.isConstraintIndex() || attempt > maxRetries) {
+      givenUp.add(name);
+      LOG.error("Giving up on index {}, it has to be fixed by hand", name);
+      return;
+    }
+    try (Transaction tx = db.beginTx()) {
+      final String key = index.getPropertyKeys().iterator().next();
+      index.drop();
+      db.schema().indexFor(index.getLabel()).on(key).create();
+      tx.success();
+      retriesByIndex.put(name, attempt);
+      retries.incrementAndGet();
+      LOG.info("Created index {} again, attempt {} of {}", name, attempt, maxRetries);
+    } catch (RuntimeException e) {
+      LOG.error("Could not create index {} again", name, e);
+    }
+  }
+
+  /**
+   * Refreshes until all indexes are online, or the ones left are failed beyond their retries, or
+   * the timeout passes
+   *
+   * @param timeoutMillis Maximum wait
+   * @return true if all indexes are online
+   */
+  public boolean awaitOnline(final long timeoutMillis) {
+    final long start = System.currentTimeMillis();
+    while (true) {
+      refresh();
+      if (getOnlineCount() == states.size()) {
+        return true;
+      }
+      if (getPopulatingCount() == 0 && !hasRetriesLeft()
+          || System.currentTimeMillis() - start >= timeoutMillis) {
+        return false;
+      }
+      try {
+        Thread.sleep(AWAIT_POLL_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+  }
+
+  private boolean hasRetriesLeft() {
+    for (Map.Entry<String, Schema.IndexState> state : states.entrySet()) {
+      if (state.getValue() == Schema.IndexState.FAILED && !givenUp.contains(state.getKey())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * In ROUTE mode, refuses lookups on an index that is not online instead of letting them scan the
+   * label. Does nothing for properties without index.
+   *
+   * @throws IndexNotOnlineException if the index is populating or failed
+   */
+  public void checkOnline(final Label label, final String key) {
+    if (mode != StartupMode.ROUTE) {
+      return;
+    }
+    final Schema.IndexState state = getState(label, key);
+    if (state != null && state != Schema.IndexState.ONLINE) {
+      throw new IndexNotOnlineException("Index " + nameOf(label, key) + " is " + state);
+    }
+  }
+
+  /**
+   * @return Last known state of the index on the label and property, null if there is none. A
+   * state other than ONLINE is refreshed in the background.
+   */
+  public Schema.IndexState getState(final Label label, final String key) {
+    return states.get(nameOf(label, key));
+  }
+
+  /**
+   * Schedules a refresh, unless one is pending already
+   */
+  private void refreshLater() {
+    if (!refreshing.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      refresher.schedule(new Runnable() {
+        @Override
+        public void run() {
+          // Cleared first, so that the refresh can schedule the next one
+          refreshing.set(false);
+          try {
+            refresh();
+          } catch (RuntimeException e) {
+            LOG.warn("Could not refresh the index states", e);
+            refreshLater();
+          }
+        }
+      }, REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      refreshing.set(false);
+    }
+  }
+
+  /**
+   * @return State of each index by "label.property", as of the last refresh
+   */
+  public ImmutableMap<String, Schema.IndexState> getStates() {
+    return states;
+  }
+
+  public int getOnlineCount() {
+    return count(Schema.IndexState.ONLINE);
+  }
+
+  public int getPopulatingCount() {
+    return count(Schema.IndexState.POPULATING);
+  }
+
+  public int getFailedCount() {
+    return count(Schema.IndexState.FAILED);
+  }
+
+  /**
+   * @return Number of times failed indexes were created again
+   */
+  public long getRetryCount() {
+    return retries.get();
+  }
+
+  public StartupMode getMode() {
+    return mode;
+  }
+
+  private int count(final Schema.IndexState state) {
+    int count = 0;
+    for (Schema.IndexState indexState : states.values()) {
+      if (indexState == state) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Stops the background refreshes
+   */
+  public void shutdown() {
+    refresher.shutdownNow();
+  }
+
+  private static String nameOf(final IndexDefinition index) {
+    return nameOf(index.getLabel(), index.getPropertyKeys().iterator().next());
+  }
+
+  private static String nameOf(final Label label, final String key) {
+    return label.name() + "." + key;
+  }
+}
@@ -0,0 +1,12 @@
+package ligo.exceptions;
+
+/**
+ * Lookup on a schema index that is still populating, or failed, refused instead of scanning the
+ * label, so that the caller can route it elsewhere or retry later
+ */
+public class IndexNotOnlineException extends IllegalDBOperation {
+
+  public IndexNotOnlineException(String message) {
+    super(message);
+  }
+}
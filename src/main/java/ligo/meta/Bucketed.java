@@ -0,0 +1,21 @@
+package ligo.meta;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Denotes that relationships of the annotated BaseRelationship attach to bucket nodes of the
+ * relative instead of the relative itself, so that entities relating to the same popular relative
+ * do not all lock it. The entity picks a bucket by hashing its id. EntityRepo reads and deletes
+ * through the buckets transparently.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Bucketed {
+  /**
+   * @return Maximum number of buckets per relative
+   */
+  public int buckets() default 16;
+}
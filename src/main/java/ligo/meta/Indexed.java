@@ -21,4 +21,12 @@ public @interface Indexed {
    * @return name for the index
    */
   public String name() default "";
+
+  /**
+   * Only for EXACT indexes. The index is then backed by a uniqueness constraint, and the field can
+   * be used to upsert entities.
+   *
+   * @return true if no two nodes of the label can share a value
+   */
+  public boolean unique() default false;
 }
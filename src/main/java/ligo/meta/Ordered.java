@@ -0,0 +1,22 @@
+package ligo.meta;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Denotes that relationships of the annotated BaseRelationship are indexed by a numeric property,
+ * so that relatives can be read in pages, newest first.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Ordered {
+  /**
+   * Relationship property to order by. It is set to the creation time when the relationship does
+   * not carry it.
+   *
+   * @return property key
+   */
+  public String key() default "cAt";
+}
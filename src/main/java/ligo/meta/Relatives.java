@@ -0,0 +1,22 @@
+package ligo.meta;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Denotes a List field holding the relatives of the entity through the given relationship. Beanify
+ * fills it with a lazy list, that reads the relatives only when it is accessed. The relationship
+ * class needs a static newInstance() or a no-arg constructor.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Relatives {
+  public Class<? extends BaseRelationship> value();
+
+  /**
+   * @return Number of relatives mapped per transaction as the list is read
+   */
+  public int batchSize() default 100;
+}
@@ -0,0 +1,80 @@
+package ligo.metrics;
+
+import org.neo4j.graphdb.Lock;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Transaction counted by TransactionStats when it closes, unless it is nested in another one of the
+ * same thread
+ */
+class CountedTransaction implements Transaction {
+
+  private final Transaction tx;
+  private final TransactionStats stats;
+  private final int[] depth;
+  private final boolean outermost;
+  private boolean success;
+  private boolean failure;
+  private boolean closed;
+
+  /**
+   * @param depth Number of the transactions of the thread not closed yet, incremented until this
+   *              one closes
+   */
+  CountedTransaction(final Transaction tx, final TransactionStats stats, final int[] depth) {
+    this.tx = tx;
+    this.stats = stats;
+    this.depth = depth;
+    this.outermost = depth[0]++ == 0;
+    if (outermost) {
+      stats.started();
+    }
+  }
+
+  @Override
+  public void failure() {
+    failure = true;
+    tx.failure();
+  }
+
+  @Override
+  public void success() {
+    success = true;
+    tx.success();
+  }
+
+  @Override
+  @Deprecated
+  public void finish() {
+    close();
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    boolean committed = false;
+    try {
+      tx.close();
+      committed = success && !failure;
+    } finally {
+      depth[0]--;
+      if (outermost) {
+        stats.closed(committed);
+      }
+    }
+  }
+
+  @Override
+  public Lock acquireWriteLock(final PropertyContainer entity) {
+    return tx.acquireWriteLock(entity);
+  }
+
+  @Override
+  public Lock acquireReadLock(final PropertyContainer entity) {
+    return tx.acquireReadLock(entity);
+  }
+}
@@ -0,0 +1,85 @@
+package ligo.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, in log-linear buckets: 8 buckets per power of two,
+ * so that a percentile is off by at most 1/8 of its value, whatever the range of values.
+ */
+public class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * @param value Value, negative ones count as 0
+   */
+  public void record(final long value) {
+    final long v = Math.max(0, value);
+    counts.incrementAndGet(indexOf(v));
+    count.incrementAndGet();
+    sum.addAndGet(v);
+    long previous = max.get();
+    while (v > previous && !max.compareAndSet(previous, v)) {
+      previous = max.get();
+    }
+  }
+
+  static int indexOf(final long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long lowestOf(final int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    final long subBucket = index % SUB_BUCKETS;
+    return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  /**
+   * @param percentile Percentile, in [0, 100]
+   * @return Highest value of the bucket the percentile falls in, capped by the max. 0 if empty.
+   */
+  public long percentile(final double percentile) {
+    final long total = count.get();
+    if (total == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return i + 1 < BUCKETS ? Math.min(lowestOf(i + 1) - 1, max.get()) : max.get();
+      }
+    }
+    return max.get();
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public double getMean() {
+    final long total = count.get();
+    return total == 0 ? 0 : (double) sum.get() / total;
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+}
@@ -0,0 +1,78 @@
+package ligo.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histograms of the latencies, in nanoseconds, and of the result sizes of an operation
+ */
+public class OperationStats implements OperationStatsMXBean {
+
+  private final Histogram latencies = new Histogram();
+  private final Histogram resultSizes = new Histogram();
+  private final long createdAt = System.nanoTime();
+
+  void record(final long nanos, final long resultSize) {
+    latencies.record(nanos);
+    resultSizes.record(resultSize);
+  }
+
+  @Override
+  public long getCount() {
+    return latencies.getCount();
+  }
+
+  @Override
+  public double getRatePerSecond() {
+    final long elapsed = System.nanoTime() - createdAt;
+    return elapsed <= 0 ? 0 : getCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+  }
+
+  @Override
+  public double getMeanMicros() {
+    return latencies.getMean() / 1000;
+  }
+
+  @Override
+  public long getP50Micros() {
+    return micros(latencies.percentile(50));
+  }
+
+  @Override
+  public long getP90Micros() {
+    return micros(latencies.percentile(90));
+  }
+
+  @Override
+  public long getP99Micros() {
+    return micros(latencies.percentile(99));
+  }
+
+  @Override
+  public long getP999Micros() {
+    return micros(latencies.percentile(99.9));
+  }
+
+  @Override
+  public long getMaxMicros() {
+    return micros(latencies.getMax());
+  }
+
+  @Override
+  public double getMeanResultSize() {
+    return resultSizes.getMean();
+  }
+
+  @Override
+  public long getP99ResultSize() {
+    return resultSizes.percentile(99);
+  }
+
+  @Override
+  public long getMaxResultSize() {
+    return resultSizes.getMax();
+  }
+
+  private static long micros(final long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+}
@@ -0,0 +1,32 @@
+package ligo.metrics;
+
+/**
+ * Calls, latencies and result sizes of one repo operation on one entity class
+ */
+public interface OperationStatsMXBean {
+
+  long getCount();
+
+  /**
+   * @return Calls per second since the first one
+   */
+  double getRatePerSecond();
+
+  double getMeanMicros();
+
+  long getP50Micros();
+
+  long getP90Micros();
+
+  long getP99Micros();
+
+  long getP999Micros();
+
+  long getMaxMicros();
+
+  double getMeanResultSize();
+
+  long getP99ResultSize();
+
+  long getMaxResultSize();
+}
@@ -0,0 +1,188 @@
+package ligo.metrics;
+
+import com.google.common.collect.Maps;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Latency and result size histograms of the repo operations of a DB, by entity class and
+ * operation, and the counters of the transactions begun through {@link #beginTx}. They are
+ * published as MBeans under "ligo:type=RepoOperation,db=...,entity=...,operation=..." and
+ * "ligo:type=Transactions,db=...". Disabled metrics neither read the clock nor record anything.
+ * Operation latencies include mapping the nodes to entities, which is not timed apart.
+ * <p/>
+ * Usage: {@code final long start = metrics.start(); ...; metrics.record(klass, "find", start, n);}
+ */
+public class RepoMetrics {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RepoMetrics.class);
+
+  /**
+   * Disabled metrics
+   */
+  public static final RepoMetrics NOOP = new RepoMetrics();
+
+  private final boolean enabled;
+  private final String db;
+  private final TransactionStats transactionStats;
+  private final ConcurrentMap<String, OperationStats> operations = Maps.newConcurrentMap();
+  private final List<ObjectName> registered = new CopyOnWriteArrayList<>();
+
+  /**
+   * Transactions begun and not closed yet by each thread
+   */
+  private final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+
+  private RepoMetrics() {
+    this.enabled = false;
+    this.db = null;
+    this.transactionStats = null;
+  }
+
+  /**
+   * Enabled metrics
+   *
+   * @param db Name of the DB in the MBean names, e.g. its path
+   */
+  public RepoMetrics(final String db) {
+    this.enabled = true;
+    this.db = db;
+    this.transactionStats = new TransactionStats();
+    register(name("Transactions", null, null), transactionStats);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Begins a transaction on the DB, counted in the transaction stats if enabled. Only the outermost
+   * transaction begun on a thread is counted: the nested ones neither commit nor roll back on their
+   * own. A transaction begun on the DB without these metrics is not seen as the outer one.
+   *
+   * @param graphDb DB
+   * @return Transaction
+   */
+  public Transaction beginTx(final GraphDatabaseService graphDb) {
+    final Transaction tx = graphDb.beginTx();
+    return enabled ? new CountedTransaction(tx, transactionStats, depth.get()) : tx;
+  }
+
+  /**
+   * @return Start time of an operation, to be passed to {@link #record}. 0 if disabled.
+   */
+  public long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records an operation
+   *
+   * @param klass      Entity class
+   * @param operation  Operation name
+   * @param start      Start time given by {@link #start()}
+   * @param resultSize Number of entities returned or written
+   */
+  public void record(final Class<?> klass, final String operation, final long start,
+                     final long resultSize) {
+    if (enabled) {
+      record(klass.getSimpleName(), operation, start, resultSize);
+    }
+  }
+
+  /**
+   * Records an operation on something other than an entity class, e.g. a full text index
+   */
+  public void record(final String entity, final String operation, final long start,
+                     final long resultSize) {
+    if (!enabled) {
+      return;
+    }
+    final long nanos = System.nanoTime() - start;
+    getStats(entity, operation).record(nanos, resultSize);
+  }
+
+  /**
+   * @return Stats of the operation on the class, null if disabled
+   */
+  public OperationStats getStats(final Class<?> klass, final String operation) {
+    return enabled ? getStats(klass.getSimpleName(), operation) : null;
+  }
+
+  private OperationStats getStats(final String entity, final String operation) {
+    final String key = entity + "." + operation;
+    OperationStats stats = operations.get(key);
+    if (stats == null) {
+      final OperationStats created = new OperationStats();
+      stats = operations.putIfAbsent(key, created);
+      if (stats == null) {
+        stats = created;
+        register(name("RepoOperation", entity, operation), created);
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * @return Transaction counters of the DB, null if disabled
+   */
+  public TransactionStats getTransactionStats() {
+    return transactionStats;
+  }
+
+  /**
+   * Unregisters the MBeans
+   */
+  public void shutdown() {
+    if (!enabled) {
+      return;
+    }
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName name : registered) {
+      try {
+        server.unregisterMBean(name);
+      } catch (JMException e) {
+        LOG.debug("Could not unregister {}", name, e);
+      }
+    }
+    registered.clear();
+  }
+
+  private String name(final String type, final String entity, final String operation) {
+    final StringBuilder name = new StringBuilder("ligo:type=").append(type)
+        .append(",db=").append(ObjectName.quote(db));
+    if (entity != null) {
+      name.append(",entity=").append(entity).append(",operation=").append(operation);
+    }
+    return name.toString();
+  }
+
+  private void register(final String name, final Object mbean) {
+    try {
+      final ObjectName objectName = new ObjectName(name);
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      server.registerMBean(mbean, objectName);
+      registered.add(objectName);
+    } catch (JMException e) {
+      LOG.warn("Could not register MBean {}", name, e);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package ligo.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transaction counters of the repos, counted by the transactions begun through
+ * {@link RepoMetrics#beginTx}. Transactions the caller begins on the DB itself are not counted. A
+ * transaction is committed if it was marked successful and not failed, and closed without error.
+ */
+public class TransactionStats implements TransactionStatsMXBean {
+
+  private final AtomicLong started = new AtomicLong();
+  private final AtomicLong committed = new AtomicLong();
+  private final AtomicLong rolledBack = new AtomicLong();
+  private final AtomicLong active = new AtomicLong();
+  private final AtomicLong peak = new AtomicLong();
+
+  void started() {
+    started.incrementAndGet();
+    final long now = active.incrementAndGet();
+    long max = peak.get();
+    while (now > max && !peak.compareAndSet(max, now)) {
+      max = peak.get();
+    }
+  }
+
+  void closed(final boolean commit) {
+    active.decrementAndGet();
+    (commit ? committed : rolledBack).incrementAndGet();
+  }
+
+  @Override
+  public long getStartedCount() {
+    return started.get();
+  }
+
+  @Override
+  public long getCommitCount() {
+    return committed.get();
+  }
+
+  @Override
+  public long getRollbackCount() {
+    return rolledBack.get();
+  }
+
+  @Override
+  public long getActiveCount() {
+    return active.get();
+  }
+
+  @Override
+  public long getPeakConcurrentCount() {
+    return peak.get();
+  }
+}
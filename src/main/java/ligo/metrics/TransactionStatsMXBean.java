@@ -0,0 +1,17 @@
+package ligo.metrics;
+
+/**
+ * Transactions of a DB, read and write, since it started
+ */
+public interface TransactionStatsMXBean {
+
+  long getStartedCount();
+
+  long getCommitCount();
+
+  long getRollbackCount();
+
+  long getActiveCount();
+
+  long getPeakConcurrentCount();
+}
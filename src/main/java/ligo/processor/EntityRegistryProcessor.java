@@ -0,0 +1,115 @@
+package ligo.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes the binary names of the @Entity classes being compiled to {@link #REGISTRY}, one per
+ * line, so that DBConfig finds them without scanning the classpath. Labels and indexes are still
+ * read from the classes themselves when they are loaded. The registry of an earlier compilation is
+ * merged in, so that incremental builds compiling some of the entities keep the others.
+ */
+@SupportedAnnotationTypes(EntityRegistryProcessor.ENTITY)
+public class EntityRegistryProcessor extends AbstractProcessor {
+
+  /**
+   * Classpath resource of the registry
+   */
+  public static final String REGISTRY = "META-INF/ligo/entities";
+  static final String ENTITY = "ligo.meta.Entity";
+
+  private final Set<String> entities = new TreeSet<>();
+  private boolean merged;
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(final Set<? extends TypeElement> annotations,
+                         final RoundEnvironment roundEnv) {
+    if (!merged) {
+      merged = true;
+      readExisting();
+    }
+    for (TypeElement annotation : annotations) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        if (element.getKind() == ElementKind.CLASS) {
+          entities.add(processingEnv.getElementUtils()
+              .getBinaryName((TypeElement) element).toString());
+        }
+      }
+    }
+    if (roundEnv.processingOver() && !entities.isEmpty()) {
+      write();
+    }
+    return false;
+  }
+
+  /**
+   * Adds the entities of the registry already in the class output. Classes that are gone or no
+   * longer annotated are dropped.
+   */
+  private void readExisting() {
+    final Elements elements = processingEnv.getElementUtils();
+    try {
+      final FileObject registry = processingEnv.getFiler()
+          .getResource(StandardLocation.CLASS_OUTPUT, "", REGISTRY);
+      try (BufferedReader reader = new BufferedReader(registry.openReader(true))) {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          final String entity = line.trim();
+          if (!entity.isEmpty() && isEntity(elements.getTypeElement(entity.replace('$', '.')))) {
+            entities.add(entity);
+          }
+        }
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      // First compilation, there is no registry yet
+    }
+  }
+
+  private static boolean isEntity(final TypeElement element) {
+    if (element == null) {
+      return false;
+    }
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName()
+          .contentEquals(ENTITY)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void write() {
+    try {
+      final FileObject registry = processingEnv.getFiler()
+          .createResource(StandardLocation.CLASS_OUTPUT, "", REGISTRY);
+      try (Writer writer = registry.openWriter()) {
+        for (String entity : entities) {
+          writer.write(entity);
+          writer.write('\n');
+        }
+      }
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+          "Could not write " + REGISTRY + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package ligo.repository;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import ligo.meta.BaseRelationship;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Asynchronous facade over a repo. Operations run on the read or write pool of the given
+ * {@link RepoExecutors}, and return futures instead of blocking the calling thread. Several facades
+ * may share the same executors.
+ *
+ * @param <R> Type of the wrapped repo
+ */
+public abstract class AsyncRepo<R extends EntityRepo> {
+
+  protected final R repo;
+  protected final RepoExecutors executors;
+  private final GroupCommitter committer;
+
+  protected AsyncRepo(final R repo, final RepoExecutors executors) {
+    this(repo, executors, null);
+  }
+
+  /**
+   * @param committer Write-behind queue of the small, high-rate writes. Null to run them on the
+   *                  write pool, one transaction each.
+   */
+  protected AsyncRepo(final R repo, final RepoExecutors executors,
+                      final GroupCommitter committer) {
+    this.repo = repo;
+    this.executors = executors;
+    this.committer = committer;
+  }
+
+  protected <V> ListenableFuture<V> read(final Callable<V> read) {
+    return executors.read(read);
+  }
+
+  protected <V> ListenableFuture<V> write(final Callable<V> write) {
+    return executors.write(write);
+  }
+
+  /**
+   * Runs a small write through the write-behind queue if there is one, see {@link GroupCommitter}
+   */
+  protected <V> ListenableFuture<V> writeBehind(final Callable<V> write) {
+    return committer == null ? executors.write(write) : committer.submit(write);
+  }
+
+  /**
+   * @see EntityRepo#getRelatives(Object, BaseRelationship)
+   */
+  public <T, V> ListenableFuture<Set<V>> getRelatives(final T entity,
+                                                      final BaseRelationship<T, V> relationship) {
+    return read(new Callable<Set<V>>() {
+      @Override
+      public Set<V> call() {
+        return repo.getRelatives(entity, relationship);
+      }
+    });
+  }
+
+  /**
+   * @see EntityRepo#delete(Class, long)
+   */
+  public ListenableFuture<Void> delete(final Class<?> klass, final long id) {
+    return write(new Callable<Void>() {
+      @Override
+      public Void call() {
+        repo.delete(klass, id);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @return Wrapped repo, for blocking calls
+   */
+  public R getRepo() {
+    return repo;
+  }
+}
@@ -0,0 +1,98 @@
+package ligo.repository;
+
+import com.google.common.base.Preconditions;
+import ligo.utils.Buckets;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * Number of relationships of a node by type and direction, kept in node properties by EntityRepo
+ * in the transaction that adds or deletes them. Nodes whose relationships predate the counters have
+ * none: their counts are read by iterating the relationships, and the counter is set the first
+ * time a relationship is added.
+ * <p/>
+ * Counters live on the node itself. Creating or deleting a relationship already takes the write
+ * lock of both its nodes, so spreading a counter over more properties or nodes would not spread
+ * the lock.
+ */
+final class DegreeCounters {
+
+  private static final String PREFIX = "_deg_";
+
+  //Ensure that no one instantiates this util class
+  private DegreeCounters() {
+  }
+
+  /**
+   * Counts the relationship on both its nodes. Has to be called within the transaction that
+   * created it.
+   */
+  static void added(final Relationship relationship) {
+    increment(relationship.getStartNode(), relationship.getType(), Direction.OUTGOING);
+    increment(relationship.getEndNode(), relationship.getType(), Direction.INCOMING);
+  }
+
+  /**
+   * Uncounts the relationship on both its nodes. Has to be called within the transaction that
+   * deleted it.
+   */
+  static void deleted(final Relationship relationship) {
+    decrement(relationship.getStartNode(), relationship.getType(), Direction.OUTGOING);
+    decrement(relationship.getEndNode(), relationship.getType(), Direction.INCOMING);
+  }
+
+  /**
+   * @return Number of relationships of the node and its buckets. Reads the counters, or the
+   * relationships of nodes without counters. Has to be called within a transaction.
+   */
+  static long count(final Node node, final RelationshipType type, final Direction direction) {
+    if (direction == Direction.BOTH) {
+      return count(node, type, Direction.OUTGOING) + count(node, type, Direction.INCOMING);
+    }
+    long count = countOwn(node, type, direction);
+    for (Node bucket : Buckets.bucketsOf(node, type)) {
+      count += countOwn(bucket, type, direction);
+    }
+    return count;
+  }
+
+  private static long countOwn(final Node node, final RelationshipType type,
+                               final Direction direction) {
+    final Object counter = node.getProperty(key(type, direction), null);
+    return counter == null ? iterate(node, type, direction) : (Long) counter;
+  }
+
+  private static void increment(final Node node, final RelationshipType type,
+                                final Direction direction) {
+    final String key = key(type, direction);
+    final Object counter = node.getProperty(key, null);
+    // The new relationship is already visible, so a first count includes it
+    node.setProperty(key, counter == null ? iterate(node, type, direction) : (Long) counter + 1);
+  }
+
+  private static void decrement(final Node node, final RelationshipType type,
+                                final Direction direction) {
+    final String key = key(type, direction);
+    final Object counter = node.getProperty(key, null);
+    // Nodes without counter are counted on read, which a delete does not change
+    if (counter != null) {
+      node.setProperty(key, Math.max(0, (Long) counter - 1));
+    }
+  }
+
+  private static long iterate(final Node node, final RelationshipType type,
+                              final Direction direction) {
+    long count = 0;
+    for (Relationship ignored : node.getRelationships(type, direction)) {
+      count++;
+    }
+    return count;
+  }
+
+  private static String key(final RelationshipType type, final Direction direction) {
+    Preconditions.checkArgument(direction != Direction.BOTH, "Counters are kept per direction");
+    return PREFIX + type.name() + (direction == Direction.OUTGOING ? "_out" : "_in");
+  }
+}
@@ -0,0 +1,99 @@
+package ligo.repository;
+
+import ligo.utils.Beanify;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily maps the nodes of a query to entities as the caller iterates. The cursor owns the read
+ * transaction of the query, so it has to be consumed on the thread that opened it, and closed, best
+ * with try-with-resources. It closes itself once it is exhausted.
+ */
+public class EntityCursor<T> implements Iterator<T>, Iterable<T>, AutoCloseable {
+
+  private final Transaction tx;
+  private final ResourceIterator<Node> nodes;
+  private final Class<T> klass;
+  private final int limit;
+  private int returned = 0;
+  private boolean closed = false;
+
+  EntityCursor(Transaction tx, ResourceIterator<Node> nodes, Class<T> klass, int skip, int limit) {
+    this.tx = tx;
+    this.nodes = nodes;
+    this.klass = klass;
+    this.limit = limit;
+
+    // Skipped nodes are never mapped
+    for (int i = 0; i < skip && nodes.hasNext(); i++) {
+      nodes.next();
+    }
+  }
+
+  /**
+   * @return Cursor without any result
+   */
+  static <T> EntityCursor<T> empty() {
+    return new EntityCursor<>(null, null, null, 0, 0);
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (closed) {
+      return false;
+    }
+    if (returned >= limit || nodes == null || !nodes.hasNext()) {
+      close();
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    returned++;
+    return Beanify.get(nodes.next(), klass);
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException("EntityCursor is read only");
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return this;
+  }
+
+  /**
+   * @return Number of entities returned so far
+   */
+  public int getReturned() {
+    return returned;
+  }
+
+  /**
+   * Releases the underlying index resources and the read transaction
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (nodes != null) {
+      nodes.close();
+    }
+    if (tx != null) {
+      tx.success();
+      tx.close();
+    }
+  }
+}
@@ -3,27 +3,52 @@ package ligo.repository;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+import ligo.cache.BoundedCache;
+import ligo.cache.CacheStats;
 import ligo.config.DBConfig;
 import ligo.exceptions.IllegalDBOperation;
 import ligo.exceptions.IllegalLabelExtractionAttemptException;
 import ligo.exceptions.IllegalReflectionOperation;
 import ligo.meta.BaseRelationship;
-import ligo.meta.IndexType;
-import ligo.meta.Indexed;
+import ligo.meta.Bucketed;
+import ligo.meta.Ordered;
+import ligo.metrics.RepoMetrics;
 import ligo.utils.Beanify;
+import ligo.utils.Buckets;
+import ligo.utils.EntityMeta;
 import ligo.utils.EntityUtils;
+import ligo.utils.FieldAccessor;
+import ligo.utils.LazyRelatives;
+import ligo.utils.LoadedState;
+import ligo.utils.OrderIndex;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.graphdb.index.RelationshipIndex;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.index.lucene.QueryContext;
+import org.neo4j.index.lucene.ValueContext;
+import org.neo4j.tooling.GlobalGraphOperations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Field;
+import java.lang.reflect.Array;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.neo4j.graphdb.DynamicLabel.label;
 
@@ -32,18 +57,100 @@ import static org.neo4j.graphdb.DynamicLabel.label;
  */
 public abstract class EntityRepo {
 
-  private static final DBConfig DEFAULT_DB_CONFIG = new DBConfig();
-
   private static final Logger LOG = LoggerFactory.getLogger(EntityRepo.class);
 
+  /**
+   * Order indexes by DB and index name. Shared by all repos of a DB, so that relationship deletes
+   * through any of them see the indexes created by the others.
+   */
+  private static final Map<GraphDatabaseService, Map<String, RelationshipIndex>> ORDER_INDEXES =
+      new ConcurrentHashMap<>();
+
+  private static final BoundedCache.Weigher<Long, Map<String, Object>> SNAPSHOT_WEIGHER =
+      new BoundedCache.Weigher<Long, Map<String, Object>>() {
+        @Override
+        public long weigh(Long id, Map<String, Object> snapshot) {
+          long weight = 64;
+          for (Map.Entry<String, Object> property : snapshot.entrySet()) {
+            weight += 48 + 2 * property.getKey().length();
+            final Object value = property.getValue();
+            if (value instanceof String) {
+              weight += 2 * ((String) value).length();
+            } else if (value.getClass().isArray()) {
+              weight += 8 * Array.getLength(value);
+            }
+          }
+          return weight;
+        }
+      };
+
+  private static final int MAX_UPSERT_ATTEMPTS = 3;
+  private static final String ID = "id";
+  private static final String UPDATED_AT = "uat";
+
+  protected final DBConfig dbConfig;
   protected GraphDatabaseService db;
 
-  //  public EntityRepo(GraphDatabaseService db) {
-  //    this.db = db;
-  //  }
+  private final NearCaches nearCaches;
+  private final RepoMetrics metrics;
+  private int batchSize;
+  private int maxResults;
+  private final SearchCache searchCache;
 
+  /**
+   * Repo of the DB configured by db.properties
+   */
   public EntityRepo() {
-    this.db = DEFAULT_DB_CONFIG.getDb();
+    this(DefaultDBConfig.INSTANCE);
+  }
+
+  /**
+   * Repo of the given DB, e.g. one of several shards. It keeps the DB and the metrics the config
+   * has when the repo is built, so it has to be rebuilt if the config restarts the DB, see
+   * {@link DBConfig#shutdown()}.
+   *
+   * @param dbConfig DB config
+   */
+  public EntityRepo(final DBConfig dbConfig) {
+    this.dbConfig = dbConfig;
+    this.db = dbConfig.getDb();
+    this.batchSize = dbConfig.getBatchSize();
+    this.maxResults = dbConfig.getMaxResults();
+    this.searchCache = SearchCache.of(db);
+    this.nearCaches = NearCaches.of(db);
+    this.metrics = dbConfig.getMetrics();
+    LazyRelatives.readThrough(db, new RelativesSource(db, metrics));
+  }
+
+  /**
+   * Reads of the lazy relatives of the entities of a DB, in transactions counted by its metrics
+   */
+  private static final class RelativesSource implements LazyRelatives.Source {
+
+    private final GraphDatabaseService db;
+    private final RepoMetrics metrics;
+
+    RelativesSource(final GraphDatabaseService db, final RepoMetrics metrics) {
+      this.db = db;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public Transaction beginTx() {
+      return metrics.beginTx(db);
+    }
+
+    @Override
+    public long count(final Node node, final RelationshipType type, final Direction direction) {
+      return DegreeCounters.count(node, type, direction);
+    }
+  }
+
+  /**
+   * Started on first use, so that repos of other DBs only do not start it
+   */
+  private static final class DefaultDBConfig {
+    private static final DBConfig INSTANCE = new DBConfig();
   }
 
   /**
@@ -57,11 +164,11 @@ public abstract class EntityRepo {
    * @throws IllegalLabelExtractionAttemptException
    */
   protected <T> Set<T> find(final String key, final Object value, Class<T> klass) {
+    final long start = metrics.start();
     String labelName = EntityUtils.extractNodeLabel(klass);
     Set<T> tSet = null;
-    try (Transaction tx = db.beginTx();
-         ResourceIterator<Node> nodes =
-             db.findNodesByLabelAndProperty(label(labelName), key, value).iterator()) {
+    try (Transaction tx = beginTx();
+         ResourceIterator<Node> nodes = findNodes(label(labelName), key, value)) {
 
       while (nodes != null && nodes.hasNext()) {
         if (tSet == null) {
@@ -72,6 +179,7 @@ public abstract class EntityRepo {
       }
       tx.success();
     }
+    metrics.record(klass, "find", start, sizeOf(tSet));
     return tSet;
   }
 
@@ -90,12 +198,11 @@ public abstract class EntityRepo {
     if (Strings.isNullOrEmpty(indexName) || Strings.isNullOrEmpty(query) || klass == null) {
       return null;
     }
+    final long start = metrics.start();
     Set<T> tSet = null;
 
-    try (Transaction tx = db.beginTx()) {
-      final Index<Node> fullTextIndex = DBConfig.getFullTextIndex(indexName);
-      final IndexHits<Node> hits = fullTextIndex.query(key, query);
-      for (Node hit : hits) {
+    try (Transaction tx = beginTx()) {
+      for (Node hit : hits(indexName, key, query)) {
         if (tSet == null) {
           tSet = Sets.newHashSet();
         }
@@ -103,9 +210,233 @@ public abstract class EntityRepo {
       }
       tx.success();
     }
+    metrics.record(klass, "search", start, sizeOf(tSet));
     return tSet;
   }
 
+  /**
+   * Nodes of the label with the property key-value, see {@link ligo.config.IndexMonitor#checkOnline}
+   */
+  private ResourceIterator<Node> findNodes(final Label label, final String key,
+                                           final Object value) {
+    dbConfig.getIndexMonitor().checkOnline(label, key);
+    return db.findNodesByLabelAndProperty(label, key, value).iterator();
+  }
+
+  /**
+   * Find by property key-value for the given klass, reading only the projected properties
+   *
+   * @param key        key
+   * @param value      value to be searched
+   * @param klass      Class of the nodes
+   * @param projection Projection of the nodes
+   * @return Projected instances, null if none is found
+   */
+  protected <T, P> Set<P> find(final String key, final Object value, Class<T> klass,
+                               final Projection<P> projection) {
+    final long start = metrics.start();
+    Set<P> pSet = null;
+    try (Transaction tx = beginTx();
+         ResourceIterator<Node> nodes = findNodes(EntityMeta.of(klass).getLabel(), key, value)) {
+      while (nodes.hasNext()) {
+        if (pSet == null) {
+          pSet = Sets.newHashSet();
+        }
+        pSet.add(projection.map(nodes.next()));
+      }
+      tx.success();
+    }
+    metrics.record(klass, "find", start, sizeOf(pSet));
+    return pSet;
+  }
+
+  /**
+   * Searches for the given query in the specified index name, reading only the projected properties
+   * of the hits
+   *
+   * @param indexName  Index name to be leveraged
+   * @param key        Name of field to search
+   * @param query      Query string
+   * @param projection Projection of the hits
+   * @return Projected instances of the hits, null if none match
+   */
+  protected <P> Set<P> search(final String indexName, final String key, final String query,
+                              final Projection<P> projection) {
+    if (Strings.isNullOrEmpty(indexName) || Strings.isNullOrEmpty(query)) {
+      return null;
+    }
+    final long start = metrics.start();
+    Set<P> pSet = null;
+    try (Transaction tx = beginTx()) {
+      for (Node hit : hits(indexName, key, query)) {
+        if (pSet == null) {
+          pSet = Sets.newHashSet();
+        }
+        pSet.add(projection.map(hit));
+      }
+      tx.success();
+    }
+    metrics.record(projection.getProjectedClass(), "search", start, sizeOf(pSet));
+    return pSet;
+  }
+
+  /**
+   * All hits of the query, through the search cache of the index when present. Has to be called
+   * within a transaction.
+   */
+  private Iterable<Node> hits(final String indexName, final String key, final String query) {
+    final BoundedCache<SearchCache.Key, long[]> cache = searchCache.get(indexName);
+    if (cache != null) {
+      return nodesOf(searchIds(cache, indexName, key, query, 0, Integer.MAX_VALUE));
+    }
+    final long start = metrics.start();
+    final IndexHits<Node> hits = dbConfig.getFullTextIndex(indexName).query(key, query);
+    metrics.record(indexName, "query", start, hits.size());
+    return hits;
+  }
+
+  /**
+   * Streams the nodes of the given klass that have the property key-value. Entities are mapped as
+   * the cursor is iterated, and at most {@link #getMaxResults()} entities are returned.
+   *
+   * @param key   key
+   * @param value value to be searched
+   * @param klass Class of expected object
+   * @param skip  Number of matches to skip
+   * @param limit Maximum number of entities to return
+   * @param <T>   Class of expected object
+   * @return Cursor over the matches, to be closed by the caller
+   */
+  protected <T> EntityCursor<T> findCursor(final String key, final Object value, Class<T> klass,
+                                           final int skip, final int limit) {
+    final Label label = EntityMeta.of(klass).getLabel();
+    final Transaction tx = beginTx();
+    try {
+      return new EntityCursor<>(tx, findNodes(label, key, value), klass, skip, cap(limit));
+    } catch (RuntimeException e) {
+      tx.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Streams the hits of the given query in the specified index name. Entities are mapped as the
+   * cursor is iterated, and at most {@link #getMaxResults()} entities are returned.
+   *
+   * @param indexName Index name to be leveraged
+   * @param key       Name of field to search
+   * @param query     Query string
+   * @param klass     Class of the expected result
+   * @param skip      Number of hits to skip
+   * @param limit     Maximum number of entities to return
+   * @param <T>       Class of the expected result
+   * @return Cursor over the hits, to be closed by the caller. Empty if the arguments are blank.
+   */
+  protected <T> EntityCursor<T> searchCursor(final String indexName, final String key,
+                                             final String query, Class<T> klass,
+                                             final int skip, final int limit) {
+    if (Strings.isNullOrEmpty(indexName) || Strings.isNullOrEmpty(query) || klass == null) {
+      return EntityCursor.empty();
+    }
+    final Transaction tx = beginTx();
+    try {
+      final BoundedCache<SearchCache.Key, long[]> cache = searchCache.get(indexName);
+      if (cache != null) {
+        final long[] ids = searchIds(cache, indexName, key, query, skip, cap(limit));
+        return new EntityCursor<>(tx, IteratorUtil.asResourceIterator(nodesOf(ids).iterator()),
+            klass, 0, ids.length);
+      }
+      final Index<Node> fullTextIndex = dbConfig.getFullTextIndex(indexName);
+      return new EntityCursor<>(tx, fullTextIndex.query(key, query), klass, skip, cap(limit));
+    } catch (RuntimeException e) {
+      tx.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Ids of one page of hits of the query, read from the search cache of the index when present.
+   * Has to be called within a transaction.
+   */
+  private long[] searchIds(final BoundedCache<SearchCache.Key, long[]> cache,
+                           final String indexName, final String key, final String query,
+                           final int skip, final int limit) {
+    final SearchCache.Key cacheKey = new SearchCache.Key(key, query, skip, limit);
+    final long version = cache.version();
+    long[] ids = cache.get(cacheKey);
+    if (ids == null) {
+      final List<Long> hitIds = Lists.newArrayList();
+      try (IndexHits<Node> hits = dbConfig.getFullTextIndex(indexName).query(key, query)) {
+        int position = 0;
+        for (Node hit : hits) {
+          if (hitIds.size() == limit) {
+            break;
+          }
+          if (position++ >= skip) {
+            hitIds.add(hit.getId());
+          }
+        }
+      }
+      ids = Longs.toArray(hitIds);
+      cache.put(cacheKey, ids, version);
+    }
+    return ids;
+  }
+
+  /**
+   * Nodes of the given ids that still exist. Has to be called within a transaction.
+   */
+  private List<Node> nodesOf(final long[] ids) {
+    final List<Node> nodes = Lists.newArrayListWithCapacity(ids.length);
+    for (long id : ids) {
+      try {
+        nodes.add(db.getNodeById(id));
+      } catch (NotFoundException e) {
+        LOG.debug("Cached hit {} is gone", id);
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * Caches the ids of the nodes matching the searches on the given full-text index, by key, query
+   * and page. The cache is shared by all repos of the DB and replaces any previous cache of the
+   * index. Commits that write to the index through EntityRepo invalidate it.
+   *
+   * @param indexName         Full-text index name
+   * @param maxEntries        Maximum number of cached pages
+   * @param maxWeight         Maximum estimated size of the cached pages, in bytes
+   * @param expireAfterMillis Time after which a cached page expires, 0 for never
+   */
+  public void enableSearchCache(final String indexName, final int maxEntries,
+                                final long maxWeight, final long expireAfterMillis) {
+    searchCache.enable(indexName, maxEntries, maxWeight, expireAfterMillis);
+  }
+
+  public void disableSearchCache(final String indexName) {
+    searchCache.disable(indexName);
+  }
+
+  /**
+   * @param indexName Full-text index name
+   * @return Statistics of the search cache of the index, null if it has none
+   */
+  public CacheStats getSearchCacheStats(final String indexName) {
+    return searchCache.stats(indexName);
+  }
+
+  private int cap(final int limit) {
+    if (limit > maxResults) {
+      LOG.debug("Limit {} capped to {}", limit, maxResults);
+      return maxResults;
+    }
+    return Math.max(0, limit);
+  }
+
+  private static int sizeOf(final Collection<?> results) {
+    return results == null ? 0 : results.size();
+  }
+
   /**
    * Find a node of given class, by it's id.
    *
@@ -114,11 +445,43 @@ public abstract class EntityRepo {
    * @return Object found in DB
    */
   protected <T> T find(final Long id, Class<T> klass) {
+    final long start = metrics.start();
+    dbConfig.getHotSet().record(id);
+    final BoundedCache<Long, Map<String, Object>> nearCache = nearCaches.get(klass);
+    if (nearCache != null) {
+      final T t = findCached(id, klass, nearCache);
+      metrics.record(klass, "findById", start, t == null ? 0 : 1);
+      return t;
+    }
+    final T t = load(id, klass, false);
+    metrics.record(klass, "findById", start, t == null ? 0 : 1);
+    return t;
+  }
+
+  /**
+   * Finds a node of given class by its id, to be changed and passed to {@link #update(Object)}. The
+   * properties it was loaded with are tracked, so that the update only writes the fields changed
+   * since. The node is read even if the class has a near cache.
+   *
+   * @param id    long id
+   * @param klass class
+   * @return Object found in DB
+   */
+  protected <T> T findForUpdate(final Long id, final Class<T> klass) {
+    final long start = metrics.start();
+    final T t = load(id, klass, true);
+    metrics.record(klass, "findForUpdate", start, t == null ? 0 : 1);
+    return t;
+  }
+
+  private <T> T load(final Long id, final Class<T> klass, final boolean track) {
     T t = null;
-    try (Transaction tx = db.beginTx()) {
+    try (Transaction tx = beginTx()) {
       try {
         Node nodeById = db.getNodeById(id);
-        t = Beanify.get(nodeById, klass);
+        if (!EntityUtils.isDeleting(nodeById)) {
+          t = Beanify.get(nodeById, klass, track);
+        }
       } catch (NotFoundException e) {
         LOG.debug("Node {} not found for class {}", id, klass);
       }
@@ -127,6 +490,73 @@ public abstract class EntityRepo {
     return t;
   }
 
+  private <T> T findCached(final Long id, final Class<T> klass,
+                           final BoundedCache<Long, Map<String, Object>> nearCache) {
+    final long version = nearCache.version();
+    Map<String, Object> snapshot = nearCache.get(id);
+    if (snapshot == null) {
+      try (Transaction tx = beginTx()) {
+        try {
+          final Node node = db.getNodeById(id);
+          if (!EntityUtils.isDeleting(node)) {
+            snapshot = Beanify.snapshot(node, klass);
+          }
+        } catch (NotFoundException e) {
+          LOG.debug("Node {} not found for class {}", id, klass);
+        }
+        tx.success();
+      }
+      if (snapshot == null) {
+        return null;
+      }
+      nearCache.put(id, snapshot, version);
+    }
+    return Beanify.get(db, id, snapshot, klass);
+  }
+
+  /**
+   * Caches the entities of the given class found by id, as snapshots of their node properties.
+   * The cache is shared by all repos of the DB and replaces any previous cache of the class.
+   * Writes through EntityRepo invalidate it once committed, writes made directly on the nodes have
+   * to call {@link #invalidate(Class, long)}.
+   *
+   * @param klass      Entity class
+   * @param maxEntries Maximum number of cached entities
+   * @param maxWeight  Maximum estimated size of the cached entities, in bytes
+   * @param eviction   Eviction policy
+   */
+  public void enableNearCache(final Class<?> klass, final int maxEntries, final long maxWeight,
+                              final BoundedCache.Eviction eviction) {
+    nearCaches.put(klass, new BoundedCache<>(maxEntries, maxWeight, SNAPSHOT_WEIGHER, eviction));
+  }
+
+  public void disableNearCache(final Class<?> klass) {
+    nearCaches.remove(klass);
+  }
+
+  /**
+   * @param klass Entity class
+   * @return Statistics of the near cache of the class, null if it has none
+   */
+  public CacheStats getNearCacheStats(final Class<?> klass) {
+    final BoundedCache<Long, Map<String, Object>> nearCache = nearCaches.get(klass);
+    return nearCache == null ? null : nearCache.stats();
+  }
+
+  /**
+   * Drops the node from the near cache of the class, for writes made directly on the nodes. To be
+   * called once the write is committed.
+   *
+   * @param klass Entity class
+   * @param id    Node id
+   */
+  protected void invalidate(final Class<?> klass, final long id) {
+    final BoundedCache<Long, Map<String, Object>> nearCache = nearCaches.get(klass);
+    if (nearCache != null) {
+      nearCache.invalidate(id);
+    }
+  }
+
   /**
    * Delete node of given class, on basis of the given property key-value
    *
@@ -135,59 +565,206 @@ public abstract class EntityRepo {
    * @param value value
    */
   public <T> void delete(final Class<T> klass, final String key, final String value) {
-    final Collection<Index<Node>> fullTextIndexes = DBConfig.getFullTextIndexes(klass);
+    final long start = metrics.start();
+    final Collection<Index<Node>> fullTextIndexes = dbConfig.getFullTextIndexes(klass);
+    final List<Long> deleted = Lists.newArrayList();
+    final List<Long> hidden = Lists.newArrayList();
 
-    try (Transaction tx = db.beginTx();
+    try (Transaction tx = beginTx();
          ResourceIterator<Node> iterator =
-             db.findNodesByLabelAndProperty(label(EntityUtils.extractNodeLabel(klass)), key, value).iterator()) {
+             findNodes(label(EntityUtils.extractNodeLabel(klass)), key, value)) {
       while (iterator.hasNext()) {
         final Node node = iterator.next();
-        for (Relationship relationship : node.getRelationships()) {
-          relationship.delete();
-        }
-        for (Index<Node> fullTextIndex : fullTextIndexes) {
-          fullTextIndex.remove(node);
+        nearCaches.written(klass, node.getId());
+        if (deleteOrHide(node, fullTextIndexes)) {
+          deleted.add(node.getId());
+        } else {
+          hidden.add(node.getId());
         }
-        node.delete();
       }
       iterator.close();
       tx.success();
     }
+    for (Long id : hidden) {
+      drain(id);
+    }
+    metrics.record(klass, "delete", start, deleted.size() + hidden.size());
   }
 
   /**
-   * Delete node
+   * Delete node. Nodes with more than {@link #getBatchSize()} relationships are hidden first: they
+   * lose their labels and full text index entries, and are not found by id nor as relatives, in one
+   * transaction. Their relationships are then deleted {@link #getBatchSize()} at a time, each batch
+   * in its own transaction, and the node last.
    *
    * @param klass Node's label has to match klass label
    * @param id    Node's id has to match id
    */
   public <T> void delete(final Class<T> klass, final long id) {
-    final Collection<Index<Node>> fullTextIndexes = DBConfig.getFullTextIndexes(klass);
+    final long start = metrics.start();
+    final Collection<Index<Node>> fullTextIndexes = dbConfig.getFullTextIndexes(klass);
+    boolean hidden = false;
 
-    try (Transaction tx = db.beginTx()) {
+    try (Transaction tx = beginTx()) {
       final Node nodeById = db.getNodeById(id);
       if (nodeById.hasLabel(label(EntityUtils.extractNodeLabel(klass)))) {
-        for (Relationship relationship : nodeById.getRelationships()) {
-          relationship.delete();
-        }
-        for (Index<Node> fullTextIndex : fullTextIndexes) {
-          fullTextIndex.remove(nodeById);
-        }
-        nodeById.delete();
+        nearCaches.written(klass, id);
+        hidden = !deleteOrHide(nodeById, fullTextIndexes);
       } else {
         LOG.warn("Nothing to delete.");
       }
       tx.success();
     }
+    if (hidden) {
+      drain(id);
+    }
+    metrics.record(klass, "delete", start, 1);
+  }
+
+  /**
+   * Finishes the deletes of the hidden nodes, left over if the JVM stopped while they were drained
+   *
+   * @return Number of nodes deleted
+   */
+  public long resumeDeletes() {
+    final List<Long> hidden = Lists.newArrayList();
+    try (Transaction tx = beginTx();
+         ResourceIterator<Node> nodes =
+             GlobalGraphOperations.at(db).getAllNodesWithLabel(EntityUtils.DELETING).iterator()) {
+      while (nodes.hasNext()) {
+        hidden.add(nodes.next().getId());
+      }
+      tx.success();
+    }
+    for (Long id : hidden) {
+      drain(id);
+    }
+    return hidden.size();
   }
 
   /**
-   * Drops all nodes corresponding to the provided klass
+   * Deletes the node with its relationships if it has at most {@link #getBatchSize()} of them,
+   * else hides it. Has to be called within a transaction.
+   *
+   * @return true if the node was deleted, false if it was hidden and has to be drained
+   */
+  private boolean deleteOrHide(final Node node, final Collection<Index<Node>> fullTextIndexes) {
+    for (Index<Node> fullTextIndex : fullTextIndexes) {
+      fullTextIndex.remove(node);
+      searchCache.written(fullTextIndex.getName());
+    }
+    // Only reads up to one relationship past the batch size
+    int degree = 0;
+    for (Relationship ignored : Buckets.relationships(node)) {
+      if (++degree > batchSize) {
+        for (Label label : node.getLabels()) {
+          node.removeLabel(label);
+        }
+        node.addLabel(EntityUtils.DELETING);
+        LOG.info("Node {} has more than {} relationships, draining them", node.getId(), batchSize);
+        return false;
+      }
+    }
+    for (Relationship relationship : Buckets.relationships(node)) {
+      deleteRelationship(relationship);
+    }
+    Buckets.deleteBuckets(node);
+    node.delete();
+    return true;
+  }
+
+  /**
+   * Deletes the relationships of a hidden node {@link #getBatchSize()} at a time, then the node
+   */
+  private void drain(final long id) {
+    long drained = 0;
+    boolean done = false;
+    while (!done) {
+      try (Transaction tx = beginTx()) {
+        final Node node;
+        try {
+          node = db.getNodeById(id);
+        } catch (NotFoundException e) {
+          LOG.debug("Node {} already deleted", id);
+          return;
+        }
+        final Iterator<Relationship> relationships = Buckets.relationships(node).iterator();
+        for (int i = 0; i < batchSize && relationships.hasNext(); i++) {
+          deleteRelationship(relationships.next());
+          drained++;
+        }
+        done = !relationships.hasNext();
+        if (done) {
+          Buckets.deleteBuckets(node);
+          node.delete();
+        }
+        tx.success();
+      } catch (NotFoundException e) {
+        // Deleted by another tx, e.g. the drain of the node at its other end. The batch is retried.
+        LOG.debug("Relationship of node {} deleted concurrently", id);
+      }
+      LOG.debug("Drained {} relationships of node {}", drained, id);
+    }
+  }
+
+  /**
+   * Drops all nodes corresponding to the provided klass, along with their relationships and full
+   * text index entries. Deletes are committed in chunks of {@link #getBatchSize()} nodes and
+   * relationships, each chunk read afresh from the label scan, so that memory use does not grow
+   * with the number of nodes. Stops between two chunks if the thread is interrupted. As committed
+   * chunks are gone from the label, calling it again resumes where it stopped.
    *
    * @param klass Class
+   * @return Number of nodes deleted
    */
-  public void deleteAll(final Class<?> klass) {
-    throw new UnsupportedOperationException("Not yet implemented");
+  public long deleteAll(final Class<?> klass) {
+    final long start = metrics.start();
+    final Label label = EntityMeta.of(klass).getLabel();
+    final Collection<Index<Node>> fullTextIndexes = dbConfig.getFullTextIndexes(klass);
+    long nodes = 0;
+    long relationships = 0;
+
+    while (!Thread.currentThread().isInterrupted()) {
+      int chunkNodes = 0;
+      int chunkRelationships = 0;
+      try (Transaction tx = beginTx()) {
+        final List<Node> chunk = Lists.newArrayListWithCapacity(batchSize);
+        try (ResourceIterator<Node> iterator =
+                 GlobalGraphOperations.at(db).getAllNodesWithLabel(label).iterator()) {
+          while (chunk.size() < batchSize && iterator.hasNext()) {
+            chunk.add(iterator.next());
+          }
+        }
+        if (chunk.isEmpty()) {
+          break;
+        }
+        // Relationships count in the chunk, so a node with many of them spans several chunks
+        for (Node node : chunk) {
+          final Iterator<Relationship> nodeRelationships = Buckets.relationships(node).iterator();
+          while (chunkNodes + chunkRelationships < batchSize && nodeRelationships.hasNext()) {
+            deleteRelationship(nodeRelationships.next());
+            chunkRelationships++;
+          }
+          if (chunkNodes + chunkRelationships >= batchSize) {
+            break;
+          }
+          for (Index<Node> fullTextIndex : fullTextIndexes) {
+            fullTextIndex.remove(node);
+            searchCache.written(fullTextIndex.getName());
+          }
+          Buckets.deleteBuckets(node);
+          node.delete();
+          chunkNodes++;
+        }
+        nearCaches.writtenAll(klass);
+        tx.success();
+      }
+      nodes += chunkNodes;
+      relationships += chunkRelationships;
+      LOG.info("Deleted {} {} nodes and {} relationships so far", nodes, label, relationships);
+    }
+    metrics.record(klass, "deleteAll", start, nodes);
+    return nodes;
   }
 
   /**
@@ -199,54 +776,39 @@ public abstract class EntityRepo {
    * @return Node representation of Object
    */
   protected final <T> Node createNode(final T t) {
-    Map<String, Object> properties = EntityUtils.extractPersistableProperties(t);
-    String labelName = EntityUtils.extractNodeLabel(t.getClass());
+    final EntityMeta<?> meta = EntityMeta.of(t.getClass());
+    final Label label = meta.getLabel();
 
-    Node existingNode = null;
+    // Full text indexes of the class are known from its metadata
+    final Map<String, String> keyToIndexNameMap = meta.getFullTextIndexNames();
 
-    // 1st TX to find existing
-    try (Transaction tx = db.beginTx()) {
+    // Lookup and creation share one TX, which joins the caller's TX when there is one
+    try (Transaction tx = beginTx()) {
       Long id;
-      if ((id = (Long) properties.get("id")) != null) {
-        existingNode = db.getNodeById(id);
-      }
-      tx.success();
-    }
-
-    // If submitted node id already exists, it will be returned
-    if (existingNode != null) {
-      return existingNode;
-    }
-
-    //Getting ready for node creation. First find full text indexes
-    Map<String, String> keyToIndexNameMap = Maps.newHashMap();
-    final Set<Field> indexable = EntityUtils.extractIndexable(t.getClass());
-    if (indexable != null) {
-      for (Field field : indexable) {
-        final Indexed indexed = field.getAnnotation(Indexed.class);
-        if (indexed.type().equals(IndexType.FULL_TEXT)) {
-          keyToIndexNameMap.put(field.getName().toLowerCase(), indexed.name());
-        }
+      if (meta.hasId() && (id = (Long) meta.getIdAccessor().get(t)) != null) {
+        // If submitted node id already exists, it will be returned
+        final Node existingNode = db.getNodeById(id);
+        tx.success();
+        return existingNode;
       }
-    }
 
-    Node newNode = null;
-    //Next TX to save new node
-    try (Transaction tx = db.beginTx()) {
-      newNode = db.createNode(label(labelName));
+      final Node newNode = db.createNode(label);
 
-      for (Map.Entry<String, Object> prop : properties.entrySet()) {
-        if (prop.getValue() != null) {
-          newNode.setProperty(prop.getKey(), prop.getValue());
-          if (keyToIndexNameMap.containsKey(prop.getKey())) {
-            final Index<Node> fullTextIndex =
-                DBConfig.getFullTextIndex(keyToIndexNameMap.get(prop.getKey()));
-            fullTextIndex.add(newNode, prop.getKey(), prop.getValue());
+      for (FieldAccessor property : meta.getPersistable()) {
+        final Object value = property.get(t);
+        if (value != null) {
+          newNode.setProperty(property.getKey(), value);
+          final String indexName = keyToIndexNameMap.get(property.getKey());
+          if (indexName != null) {
+            final long start = metrics.start();
+            final Index<Node> fullTextIndex = dbConfig.getFullTextIndex(indexName);
+            fullTextIndex.add(newNode, property.getKey(), value);
+            searchCache.written(indexName);
+            metrics.record(indexName, "add", start, 1);
           }
         }
       }
 
-
       tx.success();
       return newNode;
     }
@@ -261,13 +823,191 @@ public abstract class EntityRepo {
    * @return Created instance of class T
    */
   protected final <T> T save(final T t) {
-    try (Transaction tx = db.beginTx()) {
-      T persistedT = Beanify.get(createNode(t), (Class<T>) t.getClass());
+    final long start = metrics.start();
+    final T persistedT;
+    try (Transaction tx = beginTx()) {
+      persistedT = Beanify.get(createNode(t), (Class<T>) t.getClass());
       tx.success();
+    }
+    metrics.record(t.getClass(), "save", start, 1);
+    return persistedT;
+  }
+
+  /**
+   * Returns the entity of the same label that has the same value for the first non null unique
+   * field of the given instance, creating it from the instance if there is none. Lookup and
+   * creation share one transaction. When concurrent upserts create the same entity, the
+   * uniqueness constraint makes all but one fail, and those are retried as lookups. Within a
+   * caller's transaction, the failed attempt has already marked that transaction for rollback:
+   * the retries run in it all the same, and the caller gets the failure when it commits and has to
+   * retry its whole transaction.
+   *
+   * @param t   Instance to be found or created
+   * @param <T> Type of given entity
+   * @return Entity found or created
+   * @throws IllegalDBOperation if the instance has no unique field set
+   */
+  protected final <T> T upsert(final T t) {
+    final long start = metrics.start();
+    final Class<T> klass = (Class<T>) t.getClass();
+    final EntityMeta<T> meta = EntityMeta.of(klass);
+    FieldAccessor unique = null;
+    Object value = null;
+    for (FieldAccessor accessor : meta.getUniqueAccessors()) {
+      value = accessor.get(t);
+      if (value != null) {
+        unique = accessor;
+        break;
+      }
+    }
+    if (unique == null) {
+      throw new IllegalDBOperation("No unique field set on " + t + " to upsert it");
+    }
+
+    for (int attempt = 1; ; attempt++) {
+      final T persistedT;
+      try (Transaction tx = beginTx()) {
+        Node node;
+        try (ResourceIterator<Node> nodes =
+                 db.findNodesByLabelAndProperty(meta.getLabel(), unique.getKey(), value).iterator()) {
+          node = nodes.hasNext() ? nodes.next() : null;
+        }
+        if (node == null) {
+          node = createNode(t);
+        }
+        persistedT = Beanify.get(node, klass);
+        tx.success();
+      } catch (ConstraintViolationException | TransactionFailureException e) {
+        if (attempt >= MAX_UPSERT_ATTEMPTS) {
+          throw new IllegalDBOperation("Upsert of " + t + " failed after " + attempt + " attempts", e);
+        }
+        LOG.debug("Upsert of {} raced with another write, retrying", unique.getKey(), e);
+        continue;
+      }
+      metrics.record(klass, "upsert", start, 1);
       return persistedT;
     }
   }
 
+  /**
+   * Writes the persistable fields of the entity that changed since it was loaded. Fields are
+   * compared with the properties the instance was loaded with if it was loaded by
+   * {@link #findForUpdate}, or else with the current properties of the node. If anything changed,
+   * uAt is set to the current time, and only the full-text index entries of the changed fields are
+   * rewritten. Relationships are untouched. Entities loaded through a {@link Projection} only
+   * write their projected fields.
+   *
+   * @param t   Entity loaded from the DB, with an id
+   * @param <T> Type of given entity
+   * @return The given entity
+   * @throws IllegalDBOperation if the entity has no id or its node has another label
+   */
+  protected final <T> T update(final T t) {
+    final long start = metrics.start();
+    final Class<?> klass = t.getClass();
+    final EntityMeta<?> meta = EntityMeta.of(klass);
+    final Long id = EntityUtils.extractId(t);
+    if (id == null) {
+      throw new IllegalDBOperation("Cannot update an entity that was never saved : " + t);
+    }
+
+    final Map<String, Object> changed;
+    final Map<String, Object> persisted;
+    final Set<String> loadedKeys = LoadedState.keysOf(t);
+    final boolean tracked = LoadedState.of(t) != null;
+    try (Transaction tx = beginTx()) {
+      final Node node = db.getNodeById(id);
+      if (!node.hasLabel(meta.getLabel())) {
+        throw new IllegalDBOperation("Node " + id + " is not a " + meta.getLabelName());
+      }
+      Map<String, Object> loaded = LoadedState.of(t);
+      if (loaded == null) {
+        loaded = Beanify.snapshot(node, klass);
+      }
+
+      changed = Maps.newHashMap();
+      for (FieldAccessor property : meta.getPersistable()) {
+        if (loadedKeys != null && !loadedKeys.contains(property.getKey())) {
+          continue;
+        }
+        final Object value = property.get(t);
+        if (!property.getKey().equals(ID)
+            && !Objects.deepEquals(loaded.get(property.getKey()), value)) {
+          changed.put(property.getKey(), value);
+        }
+      }
+      if (!changed.isEmpty() && !changed.containsKey(UPDATED_AT)) {
+        for (FieldAccessor updatedAt : meta.getAccessors(UPDATED_AT)) {
+          updatedAt.set(t, System.currentTimeMillis());
+          changed.put(UPDATED_AT, updatedAt.get(t));
+        }
+      }
+
+      final Map<String, String> keyToIndexNameMap = meta.getFullTextIndexNames();
+      for (Map.Entry<String, Object> property : changed.entrySet()) {
+        if (property.getValue() == null) {
+          node.removeProperty(property.getKey());
+        } else {
+          node.setProperty(property.getKey(), property.getValue());
+        }
+        final String indexName = keyToIndexNameMap.get(property.getKey());
+        if (indexName != null) {
+          final Index<Node> fullTextIndex = dbConfig.getFullTextIndex(indexName);
+          fullTextIndex.remove(node, property.getKey());
+          if (property.getValue() != null) {
+            fullTextIndex.add(node, property.getKey(), property.getValue());
+          }
+          searchCache.written(indexName);
+        }
+      }
+      if (!changed.isEmpty()) {
+        nearCaches.written(klass, id);
+      }
+      persisted = !tracked || changed.isEmpty() ? loaded : Beanify.snapshot(node, klass);
+      tx.success();
+    }
+
+    if (!changed.isEmpty()) {
+      LOG.debug("Updated {} of node {}", changed.keySet(), id);
+    }
+    if (tracked) {
+      LoadedState.track(t, persisted, loadedKeys);
+    }
+    metrics.record(klass, "update", start, changed.isEmpty() ? 0 : 1);
+    return t;
+  }
+
+  /**
+   * Persists all the given instances, committing every {@link #getBatchSize()} instances in one
+   * transaction. Instances that already have an Id are not re-created, their Id is returned as is.
+   *
+   * @param ts  Instances to be created
+   * @param <T> Type of given entities
+   * @return Ids of the persisted nodes, in the order of the given instances
+   */
+  protected final <T> List<Long> saveAll(final Iterable<T> ts) {
+    final long start = metrics.start();
+    final List<Long> ids = Lists.newArrayList();
+    final Iterator<T> iterator = ts.iterator();
+    Class<?> klass = null;
+
+    while (iterator.hasNext()) {
+      try (Transaction tx = beginTx()) {
+        for (int i = 0; i < batchSize && iterator.hasNext(); i++) {
+          final T t = iterator.next();
+          klass = t.getClass();
+          ids.add(createNode(t).getId());
+        }
+        tx.success();
+      }
+      LOG.debug("Committed {} entities so far", ids.size());
+    }
+    if (klass != null) {
+      metrics.record(klass, "saveAll", start, ids.size());
+    }
+    return ids;
+  }
+
   /**
    * Fetch relatives of the given node that satisfy the given relationship constraints
    *
@@ -280,27 +1020,306 @@ public abstract class EntityRepo {
       throw new IllegalReflectionOperation("Cannot get relatives from null object");
     }
 
-    try (Transaction tx = db.beginTx()) {
+    final long start = metrics.start();
+    try (Transaction tx = beginTx()) {
       final Long id = EntityUtils.extractId(entity);
       final Node node = db.getNodeById(id);
+      dbConfig.getHotSet().record(id);
 
-      final Iterable<Relationship> dbRelationships = node.getRelationships(
+      final Iterable<Relationship> dbRelationships = Buckets.relationships(node,
           relationship.getRelationType(), relationship.getDirection());
       final Set<V> relatives = Sets.newHashSet(
           Iterables.transform(dbRelationships, new Function<Relationship, V>() {
             @Override
             public V apply(Relationship dbRelationship) {
-              return Beanify.get(dbRelationship.getOtherNode(node),
+              final Node other = Buckets.otherNode(dbRelationship, node);
+              return EntityUtils.isDeleting(other) ? null : Beanify.get(other,
                   (Class<V>) relationship.getRelationType().getOtherNodeType(entity.getClass()));
             }
           })
       );
+      relatives.remove(null);
 
       tx.success();
 
+      metrics.record(entity.getClass(), "getRelatives", start, relatives.size());
+      return relatives;
+    }
+
+  }
+
+  /**
+   * Fetch relatives of the given node, reading only the projected properties of each relative
+   *
+   * @param entity       Given node entity
+   * @param relationship Given relationship
+   * @param projection   Projection of the relatives
+   * @return Set of projected relatives
+   */
+  public <T, P> Set<P> getRelatives(final T entity, final BaseRelationship<T, ?> relationship,
+                                    final Projection<P> projection) {
+    if (entity == null) {
+      throw new IllegalReflectionOperation("Cannot get relatives from null object");
+    }
+
+    final long start = metrics.start();
+    try (Transaction tx = beginTx()) {
+      final Node node = db.getNodeById(EntityUtils.extractId(entity));
+      dbConfig.getHotSet().record(node.getId());
+      final Set<P> relatives = Sets.newHashSet();
+      for (Relationship dbRelationship : Buckets.relationships(node,
+          relationship.getRelationType(), relationship.getDirection())) {
+        final Node other = Buckets.otherNode(dbRelationship, node);
+        if (!EntityUtils.isDeleting(other)) {
+          relatives.add(projection.map(other));
+        }
+      }
+      tx.success();
+      metrics.record(entity.getClass(), "getRelatives", start, relatives.size());
       return relatives;
     }
+  }
+
+  /**
+   * Counts the relatives of the given node in constant time, from the counters maintained by
+   * {@link #addRelatives} and the deletes
+   *
+   * @param entity       Given node entity
+   * @param relationship Given relationship
+   * @return Number of relationships of the type and direction of the relationship
+   */
+  public <T> long countRelatives(final T entity, final BaseRelationship<T, ?> relationship) {
+    if (entity == null) {
+      throw new IllegalReflectionOperation("Cannot count relatives of null object");
+    }
+    final long start = metrics.start();
+    final long count = countRelationships(EntityUtils.extractId(entity),
+        relationship.getRelationType(), relationship.getDirection());
+    metrics.record(entity.getClass(), "countRelatives", start, count);
+    return count;
+  }
+
+  /**
+   * Counts the relationships of the node with the given id, for relationships declared from the
+   * other node type
+   *
+   * @param id        Node id
+   * @param type      Relationship type
+   * @param direction Direction, from the node
+   * @return Number of relationships
+   */
+  protected long countRelationships(final long id, final RelationshipType type,
+                                    final Direction direction) {
+    try (Transaction tx = beginTx()) {
+      final long count = DegreeCounters.count(db.getNodeById(id), type, direction);
+      tx.success();
+      return count;
+    }
+  }
+
+  /**
+   * Starts a traversal from the given entity. Add steps with {@link Traversal#then} and run it with
+   * {@link Traversal#list()}.
+   *
+   * @param from Given node entity
+   * @param <T>  Type of given entity
+   * @return Traversal without any step
+   */
+  public <T> Traversal<T> traverse(final T from) {
+    if (from == null) {
+      throw new IllegalReflectionOperation("Cannot traverse from null object");
+    }
+    return new Traversal<>(db, EntityUtils.extractId(from), (Class<T>) from.getClass());
+  }
+
+  /**
+   * Fetch one page of relatives, newest first by the @Ordered key of the relationship. The page is
+   * read from the order index of the relationship type, so only the returned relatives and ties at
+   * the cursor position are touched, whatever the degree of the node.
+   *
+   * @param entity       Given node entity
+   * @param relationship Given relationship. Has to be @Ordered, with OUTGOING or INCOMING direction
+   * @param after        Cursor returned with the previous page, null for the first page
+   * @param limit        Page size
+   * @return Page of relatives, with the cursor of the next page
+   */
+  public <T, V> RelativesPage<V> getRelativesPage(final T entity,
+                                                  final BaseRelationship<T, V> relationship,
+                                                  final RelativesPage.Cursor after,
+                                                  final int limit) {
+    if (entity == null) {
+      throw new IllegalReflectionOperation("Cannot get relatives from null object");
+    }
+    final Ordered ordered = relationship.getClass().getAnnotation(Ordered.class);
+    if (ordered == null) {
+      throw new IllegalDBOperation(relationship.getClass() + " is not @Ordered");
+    }
+    if (relationship.getDirection() == Direction.BOTH) {
+      throw new IllegalDBOperation("Ordered relatives need OUTGOING or INCOMING direction");
+    }
+
+    final String key = ordered.key();
+    final Class<V> otherType =
+        (Class<V>) relationship.getRelationType().getOtherNodeType(entity.getClass());
+    final int pageSize = cap(limit);
+
+    final long start = metrics.start();
+    try (Transaction tx = beginTx()) {
+      final Node node = db.getNodeById(EntityUtils.extractId(entity));
+      final List<Relationship> hits = orderedPage(node, relationship, ordered, after, pageSize);
+
+      final List<V> relatives = Lists.newArrayListWithCapacity(pageSize);
+      for (Relationship hit : hits.subList(0, Math.min(pageSize, hits.size()))) {
+        relatives.add(Beanify.get(Buckets.otherNode(hit, node), otherType));
+      }
+      RelativesPage.Cursor next = null;
+      if (hits.size() > pageSize && pageSize > 0) {
+        final Relationship last = hits.get(pageSize - 1);
+        next = new RelativesPage.Cursor(((Number) last.getProperty(key)).longValue(), last.getId());
+      }
+
+      tx.success();
+      metrics.record(entity.getClass(), "getRelativesPage", start, relatives.size());
+      return new RelativesPage<>(relatives, next);
+    }
+  }
+
+  /**
+   * Reads one page of relationships from the order index, newest first, plus the first one of the
+   * next page when there is one. Relationships in the buckets of the node are found by their owner
+   * entry, and the ones to relatives being deleted are skipped. Has to be called within a
+   * transaction.
+   */
+  private List<Relationship> orderedPage(final Node node, final BaseRelationship<?, ?> relationship,
+                                         final Ordered ordered, final RelativesPage.Cursor after,
+                                         final int pageSize) {
+    final String key = ordered.key();
+    final long max = after == null ? Long.MAX_VALUE : after.getValue();
+    final Sort sort = new Sort(new SortField(key, SortField.LONG, true),
+        new SortField(OrderIndex.TIE_BREAK, SortField.LONG, true));
+    final RelationshipIndex index = orderIndex(relationship.getRelationType(), ordered);
+
+    final IndexHits<Relationship> found;
+    if (relationship.getDirection() == Direction.OUTGOING) {
+      found = index.query(QueryContext.numericRange(key, Long.MIN_VALUE, max, true, true)
+          .sort(sort), node, null);
+    } else if (Iterables.isEmpty(Buckets.bucketsOf(node, relationship.getRelationType()))) {
+      found = index.query(QueryContext.numericRange(key, Long.MIN_VALUE, max, true, true)
+          .sort(sort), null, node);
+    } else {
+      final BooleanQuery query = new BooleanQuery();
+      query.add(NumericRangeQuery.newLongRange(key, Long.MIN_VALUE, max, true, true),
+          BooleanClause.Occur.MUST);
+      query.add(NumericRangeQuery.newLongRange(OrderIndex.OWNER, node.getId(), node.getId(),
+          true, true), BooleanClause.Occur.MUST);
+      found = index.query(new QueryContext(query).sort(sort), null, null);
+    }
+
+    final List<Relationship> page = Lists.newArrayListWithCapacity(pageSize + 1);
+    try (IndexHits<Relationship> hits = found) {
+      for (Relationship hit : hits) {
+        if (!isOrderHitOf(hit, node, relationship)) {
+          LOG.warn("Ignoring stale order index entry for relationship {}", hit.getId());
+          continue;
+        }
+        if (EntityUtils.isDeleting(Buckets.otherNode(hit, node))) {
+          continue;
+        }
+        final long value = ((Number) hit.getProperty(key)).longValue();
+        if (after != null && value == after.getValue() && hit.getId() >= after.getId()) {
+          continue;
+        }
+        page.add(hit);
+        if (page.size() > pageSize) {
+          break;
+        }
+      }
+    }
+    return page;
+  }
+
+  private static boolean isOrderHitOf(final Relationship hit, final Node node,
+                                      final BaseRelationship<?, ?> relationship) {
+    final Node expected = relationship.getDirection() == Direction.OUTGOING ?
+        hit.getStartNode() : Buckets.ownerOf(hit.getEndNode());
+    return hit.isType(relationship.getRelationType()) && expected.equals(node);
+  }
+
+  /**
+   * Fetch the relatives of all the given entities in one transaction. A relative shared by several
+   * entities is mapped once, and the same instance appears in each of their lists.
+   *
+   * @param entities     Given node entities
+   * @param relationship Given relationship
+   * @return Relatives of each entity, in the order of the given entities
+   */
+  public <T, V> Map<T, List<V>> getRelativesBatch(final Collection<T> entities,
+                                                  final BaseRelationship<T, V> relationship) {
+    return getRelativesBatch(entities, relationship, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Fetch at most limitPerEntity relatives of each of the given entities in one transaction. For an
+   * @Ordered relationship with OUTGOING or INCOMING direction, those are the newest relatives, as
+   * in {@link #getRelativesPage}. A relative shared by several entities is mapped once, and the
+   * same instance appears in each of their lists.
+   *
+   * @param entities       Given node entities
+   * @param relationship   Given relationship
+   * @param limitPerEntity Maximum number of relatives per entity
+   * @return Relatives of each entity, in the order of the given entities
+   */
+  public <T, V> Map<T, List<V>> getRelativesBatch(final Collection<T> entities,
+                                                  final BaseRelationship<T, V> relationship,
+                                                  final int limitPerEntity) {
+    final Ordered ordered = relationship.getDirection() == Direction.BOTH ?
+        null : relationship.getClass().getAnnotation(Ordered.class);
+    final Map<T, List<V>> relativesByEntity = Maps.newLinkedHashMap();
+    final Map<Long, V> beans = Maps.newHashMap();
+
+    final long start = metrics.start();
+    try (Transaction tx = beginTx()) {
+      for (T entity : entities) {
+        if (entity == null) {
+          throw new IllegalReflectionOperation("Cannot get relatives from null object");
+        }
+        final Node node = db.getNodeById(EntityUtils.extractId(entity));
+        final Class<V> otherType =
+            (Class<V>) relationship.getRelationType().getOtherNodeType(entity.getClass());
+
+        final Iterable<Relationship> dbRelationships;
+        if (ordered != null && limitPerEntity < Integer.MAX_VALUE) {
+          dbRelationships = orderedPage(node, relationship, ordered, null, limitPerEntity);
+        } else {
+          dbRelationships = Buckets.relationships(node, relationship.getRelationType(),
+              relationship.getDirection());
+        }
 
+        final List<V> relatives = Lists.newArrayList();
+        for (Relationship dbRelationship : dbRelationships) {
+          if (relatives.size() >= limitPerEntity) {
+            break;
+          }
+          final Node relativeNode = Buckets.otherNode(dbRelationship, node);
+          if (EntityUtils.isDeleting(relativeNode)) {
+            continue;
+          }
+          V relative = beans.get(relativeNode.getId());
+          if (relative == null) {
+            relative = Beanify.get(relativeNode, otherType);
+            beans.put(relativeNode.getId(), relative);
+          }
+          relatives.add(relative);
+        }
+        relativesByEntity.put(entity, relatives);
+      }
+      tx.success();
+    }
+    if (!entities.isEmpty()) {
+      metrics.record(entities.iterator().next().getClass(), "getRelativesBatch", start,
+          beans.size());
+    }
+    return relativesByEntity;
   }
 
   /**
@@ -308,9 +1327,10 @@ public abstract class EntityRepo {
    * @param entity       Given node entity
    * @param relationship Relationship between entity and relatives
    * @param relatives    Relatives to be added
+   * @return Ids of the relative nodes, in the order of the given relatives
    */
-  public <T, V> void addRelatives(final T entity, BaseRelationship<T, V> relationship,
-                                  final V... relatives) {
+  public <T, V> List<Long> addRelatives(final T entity, BaseRelationship<T, V> relationship,
+                                        final V... relatives) {
     if (entity == null) {
       throw new IllegalReflectionOperation("Cannot get relatives from null object");
     }
@@ -319,42 +1339,205 @@ public abstract class EntityRepo {
       throw new IllegalDBOperation("Cannot add null relatives");
     }
 
-    try (Transaction tx = db.beginTx()) {
+    final long start = metrics.start();
+    final List<Long> ids = Lists.newArrayListWithCapacity(relatives.length);
+    try (Transaction tx = beginTx()) {
       final Long id = EntityUtils.extractId(entity);
       final Node node = db.getNodeById(id);
 
       for (V relative : relatives) {
-        Node relativeNode = null;
-        try {
-          final Long relativesId = EntityUtils.extractId(relative);
+        ids.add(connect(node, relationship, relative).getId());
+      }
 
-          if (relativesId == null) {
-            relativeNode = createNode(relative);
-          } else {
-            relativeNode = db.getNodeById(relativesId);
-          }
-        } catch (IllegalReflectionOperation e) {
-          LOG.error("Skipping relative {} due to problem in extracting its Long id", e);
-        } catch (NotFoundException nfe) {
-          LOG.debug("Node not found");
-        }
+      tx.success();
+    }
+    metrics.record(entity.getClass(), "addRelatives", start, ids.size());
+    return ids;
+  }
+
+  /**
+   * Adds relatives to the given entity node, committing every {@link #getBatchSize()} relatives in
+   * one transaction. The relative nodes are created if they don't exist.
+   *
+   * @param entity       Given node entity
+   * @param relationship Relationship between entity and relatives
+   * @param relatives    Relatives to be added
+   * @return Ids of the relative nodes, in the order of the given relatives
+   */
+  public <T, V> List<Long> addRelativesBatch(final T entity, BaseRelationship<T, V> relationship,
+                                             final Iterable<V> relatives) {
+    if (entity == null) {
+      throw new IllegalReflectionOperation("Cannot get relatives from null object");
+    }
 
-        if (relativeNode == null) {
-          throw new IllegalDBOperation(
-              "The relative node is null. Here is the relative object : " + relative);
+    if (relatives == null) {
+      throw new IllegalDBOperation("Cannot add null relatives");
+    }
+
+    final long start = metrics.start();
+    final Long id = EntityUtils.extractId(entity);
+    final List<Long> ids = Lists.newArrayList();
+    final Iterator<V> iterator = relatives.iterator();
+
+    while (iterator.hasNext()) {
+      try (Transaction tx = beginTx()) {
+        final Node node = db.getNodeById(id);
+        for (int i = 0; i < batchSize && iterator.hasNext(); i++) {
+          ids.add(connect(node, relationship, iterator.next()).getId());
         }
-        Relationship persistedRelationship =
-            node.createRelationshipTo(relativeNode, relationship.getRelationType());
-        if (relationship.getProperties() != null) {
-          for (Map.Entry<String, ? extends Object> entry : relationship.getProperties().entrySet()) {
-            persistedRelationship.setProperty(entry.getKey(), entry.getValue());
-          }
+        tx.success();
+      }
+      LOG.debug("Committed {} relatives so far", ids.size());
+    }
+    metrics.record(entity.getClass(), "addRelativesBatch", start, ids.size());
+    return ids;
+  }
+
+  /**
+   * Creates the relationship from the given node to the relative, creating the relative node first
+   * if it does not exist. Has to be called within a transaction.
+   *
+   * @return Node of the relative
+   */
+  private <T, V> Node connect(final Node node, final BaseRelationship<T, V> relationship,
+                              final V relative) {
+    Node relativeNode = null;
+    try {
+      final Long relativesId = EntityUtils.extractId(relative);
+
+      if (relativesId == null) {
+        relativeNode = createNode(relative);
+      } else {
+        relativeNode = db.getNodeById(relativesId);
+      }
+    } catch (IllegalReflectionOperation e) {
+      LOG.error("Skipping relative {} due to problem in extracting its Long id", e);
+    } catch (NotFoundException nfe) {
+      LOG.debug("Node not found");
+    }
+
+    if (relativeNode == null) {
+      throw new IllegalDBOperation(
+          "The relative node is null. Here is the relative object : " + relative);
+    }
+    final Bucketed bucketed = relationship.getClass().getAnnotation(Bucketed.class);
+    final Node target = bucketed == null ? relativeNode : Buckets.bucketFor(relativeNode,
+        relationship.getRelationType(), node.getId(), bucketed.buckets());
+    Relationship persistedRelationship =
+        node.createRelationshipTo(target, relationship.getRelationType());
+    if (relationship.getProperties() != null) {
+      for (Map.Entry<String, ? extends Object> entry : relationship.getProperties().entrySet()) {
+        persistedRelationship.setProperty(entry.getKey(), entry.getValue());
+      }
+    }
+    final Ordered ordered = relationship.getClass().getAnnotation(Ordered.class);
+    if (ordered != null) {
+      indexOrder(persistedRelationship, ordered);
+    }
+    DegreeCounters.added(persistedRelationship);
+    return relativeNode;
+  }
+
+  /**
+   * Adds the relationship to the order index of its type, stamping the order key with the current
+   * time if the relationship does not carry it.
+   */
+  private void indexOrder(final Relationship relationship, final Ordered ordered) {
+    final String key = ordered.key();
+    if (!relationship.hasProperty(key)) {
+      relationship.setProperty(key, System.currentTimeMillis());
+    }
+    final RelationshipIndex index = orderIndex(relationship.getType(), ordered);
+    index.add(relationship, key,
+        ValueContext.numeric(((Number) relationship.getProperty(key)).longValue()));
+    index.add(relationship, OrderIndex.TIE_BREAK, ValueContext.numeric(relationship.getId()));
+    if (relationship.getEndNode().hasLabel(Buckets.BUCKET)) {
+      index.add(relationship, OrderIndex.OWNER,
+          ValueContext.numeric(Buckets.ownerOf(relationship.getEndNode()).getId()));
+    }
+  }
+
+  private RelationshipIndex orderIndex(final RelationshipType type, final Ordered ordered) {
+    final String indexName = OrderIndex.nameOf(type, ordered);
+    final Map<String, RelationshipIndex> orderIndexes = orderIndexesOf(db);
+    RelationshipIndex index = orderIndexes.get(indexName);
+    if (index == null) {
+      index = db.index().forRelationships(indexName);
+      orderIndexes.put(indexName, index);
+    }
+    return index;
+  }
+
+  /**
+   * @return Order indexes of the DB by name, read from the DB the first time. Has to be called
+   * within a transaction.
+   */
+  private static synchronized Map<String, RelationshipIndex> orderIndexesOf(
+      final GraphDatabaseService db) {
+    Map<String, RelationshipIndex> orderIndexes = ORDER_INDEXES.get(db);
+    if (orderIndexes == null) {
+      orderIndexes = new ConcurrentHashMap<>();
+      for (String indexName : db.index().relationshipIndexNames()) {
+        if (OrderIndex.isOrderIndex(indexName)) {
+          orderIndexes.put(indexName, db.index().forRelationships(indexName));
         }
       }
+      ORDER_INDEXES.put(db, orderIndexes);
+    }
+    return orderIndexes;
+  }
 
-      tx.success();
+  /**
+   * Deletes the relationship, its entries in the order indexes, and uncounts it from its nodes.
+   * Ids of deleted relationships and nodes are reused, so stale entries would otherwise resolve to
+   * unrelated relationships. Has to be called within a transaction.
+   */
+  private void deleteRelationship(final Relationship relationship) {
+    for (Map.Entry<String, RelationshipIndex> index : orderIndexesOf(db).entrySet()) {
+      if (OrderIndex.isOrderIndexOf(index.getKey(), relationship.getType())) {
+        index.getValue().remove(relationship);
+      }
     }
+    DegreeCounters.deleted(relationship);
+    relationship.delete();
+  }
 
+  /**
+   * @return Number of entities or relatives written per transaction by the batch operations
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Overrides the number of entities or relatives written per transaction by the batch operations
+   *
+   * @param batchSize Commit size, has to be positive
+   */
+  public void setBatchSize(int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize should be positive");
+    }
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @return Maximum number of entities a cursor returns, whatever the requested limit
+   */
+  public int getMaxResults() {
+    return maxResults;
+  }
+
+  /**
+   * Overrides the maximum number of entities a cursor returns
+   *
+   * @param maxResults Result size cap, has to be positive
+   */
+  public void setMaxResults(int maxResults) {
+    if (maxResults <= 0) {
+      throw new IllegalArgumentException("maxResults should be positive");
+    }
+    this.maxResults = maxResults;
   }
 
   /**
@@ -366,4 +1549,20 @@ public abstract class EntityRepo {
     return db;
   }
 
+  /**
+   * Begins a transaction on the DB, counted by the metrics
+   *
+   * @return Transaction
+   */
+  protected Transaction beginTx() {
+    return metrics.beginTx(db);
+  }
+
+  /**
+   * @return Config of the DB in use, with its full text indexes
+   */
+  public DBConfig getDbConfig() {
+    return dbConfig;
+  }
+
 }
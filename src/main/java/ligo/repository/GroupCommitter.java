@@ -0,0 +1,202 @@
+package ligo.repository;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind queue committing many small writes in one transaction. Writes are gathered by one
+ * committer thread until maxBatchSize writes are queued or maxDelayMillis elapsed since the first
+ * one, then run in one transaction and their futures completed once it commits.
+ * <p/>
+ * The transactions the writes open themselves are nested in the one of the batch, so a failing
+ * write rolls back its whole batch. Failed batches are split in halves and retried, down to single
+ * writes, so that only the failing writes get a failed future. Writes may hence run more than
+ * once, and should not depend on their own transaction committing, e.g. retry loops like upsert.
+ * Follow-up writes touching many nodes, like a timeline fan-out, belong after the future of the
+ * write completes rather than in the write itself.
+ */
+public class GroupCommitter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GroupCommitter.class);
+
+  private final GraphDatabaseService db;
+  private final int maxBatchSize;
+  private final long maxDelayMillis;
+  private final BlockingQueue<Pending<?>> queue;
+  private final Thread committer;
+  private final AtomicLong batches = new AtomicLong();
+  /**
+   * Guards running along with the offers, so that no write is queued once the loop may have exited
+   */
+  private final Object lock = new Object();
+  private volatile boolean running = true;
+
+  /**
+   * Starts the committer thread
+   *
+   * @param db             DB
+   * @param maxBatchSize   Maximum number of writes per transaction
+   * @param maxDelayMillis Maximum time the first write of a batch waits for others
+   * @param queueSize      Number of writes waiting before new ones are rejected
+   */
+  public GroupCommitter(final GraphDatabaseService db, final int maxBatchSize,
+                        final long maxDelayMillis, final int queueSize) {
+    Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize should be positive");
+    Preconditions.checkArgument(maxDelayMillis >= 0, "maxDelayMillis should not be negative");
+    this.db = db;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayMillis = maxDelayMillis;
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.committer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        commitLoop();
+      }
+    }, "ligo-group-commit");
+    this.committer.setDaemon(true);
+    this.committer.start();
+  }
+
+  /**
+   * Queues the write
+   *
+   * @param write Write, run on the committer thread
+   * @return Future of the result of the write, completed once its batch is committed. Failed with
+   * RejectedExecutionException if the queue is full or the committer is shut down.
+   */
+  public <V> ListenableFuture<V> submit(final Callable<V> write) {
+    final Pending<V> pending = new Pending<>(write);
+    synchronized (lock) {
+      if (!running || !queue.offer(pending)) {
+        return Futures.immediateFailedFuture(
+            new RejectedExecutionException("Write-behind queue is full or shut down"));
+      }
+    }
+    return pending.future;
+  }
+
+  /**
+   * @return Number of transactions committed or rolled back so far, retries included
+   */
+  public long getBatchCount() {
+    return batches.get();
+  }
+
+  /**
+   * Stops accepting writes, and waits for the queued ones to be committed. Writes left over by an
+   * interrupted committer get a failed future.
+   */
+  public void shutdown() throws InterruptedException {
+    synchronized (lock) {
+      running = false;
+    }
+    committer.join();
+    failQueued(new RejectedExecutionException("Write-behind queue is shut down"));
+  }
+
+  private void commitLoop() {
+    final List<Pending<?>> batch = Lists.newArrayListWithCapacity(maxBatchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        final Pending<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        while (batch.size() < maxBatchSize) {
+          final Pending<?> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        commit(batch);
+      } catch (InterruptedException e) {
+        LOG.warn("Group committer interrupted, failing {} writes", batch.size() + queue.size());
+        synchronized (lock) {
+          running = false;
+        }
+        final Exception interrupted = new RejectedExecutionException("Group committer interrupted");
+        for (Pending<?> pending : batch) {
+          pending.future.setException(interrupted);
+        }
+        failQueued(interrupted);
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void failQueued(final Exception e) {
+    final List<Pending<?>> left = Lists.newArrayList();
+    queue.drainTo(left);
+    for (Pending<?> pending : left) {
+      pending.future.setException(e);
+    }
+  }
+
+  /**
+   * Runs the writes in one transaction. If it fails, retries each half of them.
+   */
+  private void commit(final List<Pending<?>> batch) {
+    batches.incrementAndGet();
+    try {
+      try (Transaction tx = db.beginTx()) {
+        for (Pending<?> pending : batch) {
+          pending.run();
+        }
+        tx.success();
+      }
+    } catch (Exception e) {
+      if (batch.size() == 1) {
+        batch.get(0).future.setException(e);
+      } else {
+        LOG.debug("Batch of {} writes failed, splitting it", batch.size(), e);
+        final int half = batch.size() / 2;
+        commit(batch.subList(0, half));
+        commit(batch.subList(half, batch.size()));
+      }
+      return;
+    }
+    for (Pending<?> pending : batch) {
+      pending.complete();
+    }
+    LOG.debug("Committed {} writes in one transaction", batch.size());
+  }
+
+  private static final class Pending<V> {
+    private final Callable<V> write;
+    private final SettableFuture<V> future = SettableFuture.create();
+    private V result;
+
+    private Pending(Callable<V> write) {
+      this.write = write;
+    }
+
+    private void run() throws Exception {
+      result = write.call();
+    }
+
+    private void complete() {
+      future.set(result);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package ligo.repository;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import ligo.cache.BoundedCache;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Near caches of node snapshots by entity class. Writes to the nodes are recorded on the writing
+ * thread, and invalidate the cached nodes only once their transaction is committed. Within a
+ * caller's transaction, invalidating as the inner transaction closes would let a concurrent find
+ * cache the node as it was before the commit, under the version of the invalidation.
+ */
+class NearCaches implements TransactionEventHandler<Void> {
+
+  private static final Map<GraphDatabaseService, NearCaches> BY_DB = new IdentityHashMap<>();
+
+  private final Map<Class<?>, BoundedCache<Long, Map<String, Object>>> caches =
+      new ConcurrentHashMap<>();
+
+  private final ThreadLocal<Multimap<Class<?>, Long>> pendingWrites =
+      new ThreadLocal<Multimap<Class<?>, Long>>() {
+        @Override
+        protected Multimap<Class<?>, Long> initialValue() {
+          return HashMultimap.create();
+        }
+      };
+
+  private final ThreadLocal<Set<Class<?>>> pendingClears = new ThreadLocal<Set<Class<?>>>() {
+    @Override
+    protected Set<Class<?>> initialValue() {
+      return Sets.newHashSet();
+    }
+  };
+
+  private NearCaches() {
+  }
+
+  /**
+   * @return Near caches of the given DB, shared by all its repos, so that a write through any of
+   * them invalidates them
+   */
+  static synchronized NearCaches of(GraphDatabaseService db) {
+    NearCaches nearCaches = BY_DB.get(db);
+    if (nearCaches == null) {
+      nearCaches = new NearCaches();
+      db.registerTransactionEventHandler(nearCaches);
+      BY_DB.put(db, nearCaches);
+    }
+    return nearCaches;
+  }
+
+  void put(Class<?> klass, BoundedCache<Long, Map<String, Object>> cache) {
+    caches.put(klass, cache);
+  }
+
+  void remove(Class<?> klass) {
+    caches.remove(klass);
+  }
+
+  /**
+   * @return Near cache of the class, null if its nodes are not cached
+   */
+  BoundedCache<Long, Map<String, Object>> get(Class<?> klass) {
+    return caches.get(klass);
+  }
+
+  /**
+   * Records a write to the node by the current transaction. Has to be called within it.
+   */
+  void written(Class<?> klass, long id) {
+    if (caches.containsKey(klass)) {
+      pendingWrites.get().put(klass, id);
+    }
+  }
+
+  /**
+   * Records writes to any node of the class by the current transaction. Has to be called within
+   * it.
+   */
+  void writtenAll(Class<?> klass) {
+    if (caches.containsKey(klass)) {
+      pendingClears.get().add(klass);
+    }
+  }
+
+  @Override
+  public Void beforeCommit(TransactionData data) throws Exception {
+    return null;
+  }
+
+  @Override
+  public void afterCommit(TransactionData data, Void state) {
+    final Multimap<Class<?>, Long> written = pendingWrites.get();
+    for (Map.Entry<Class<?>, Long> write : written.entries()) {
+      final BoundedCache<Long, Map<String, Object>> cache = caches.get(write.getKey());
+      if (cache != null) {
+        cache.invalidate(write.getValue());
+      }
+    }
+    written.clear();
+    final Set<Class<?>> cleared = pendingClears.get();
+    for (Class<?> klass : cleared) {
+      final BoundedCache<Long, Map<String, Object>> cache = caches.get(klass);
+      if (cache != null) {
+        cache.invalidateAll();
+      }
+    }
+    cleared.clear();
+  }
+
+  @Override
+  public void afterRollback(TransactionData data, Void state) {
+    pendingWrites.get().clear();
+    pendingClears.get().clear();
+  }
+}
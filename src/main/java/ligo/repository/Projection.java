@@ -0,0 +1,83 @@
+package ligo.repository;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import ligo.utils.Beanify;
+import ligo.utils.EntityMeta;
+import org.neo4j.graphdb.Node;
+
+import java.util.Set;
+
+/**
+ * Which properties to read when mapping nodes, for list views that need a few fields only. Only
+ * the projected property keys are read from the node, the others are never loaded.
+ *
+ * @param <P> Type of the projected instances
+ */
+public final class Projection<P> {
+
+  private final Class<P> klass;
+  private final ImmutableSet<String> keys;
+
+  private Projection(Class<P> klass, ImmutableSet<String> keys) {
+    this.klass = klass;
+    this.keys = keys;
+  }
+
+  /**
+   * Projects nodes on a DTO class. Its non-static fields name the properties to read, the same
+   * way as entity fields, and a field named id gets the node id. No annotation is needed.
+   *
+   * @param klass DTO class, with a public no-arg constructor
+   * @param <P>   Type of the DTO
+   * @return Projection on the fields of the DTO
+   */
+  public static <P> Projection<P> of(final Class<P> klass) {
+    final EntityMeta<P> meta = EntityMeta.of(klass);
+    final Set<String> keys = Sets.newHashSet(meta.getKeys());
+    for (EntityMeta.RelativesField relatives : meta.getRelativesFields()) {
+      keys.remove(relatives.getAccessor().getKey());
+    }
+    return new Projection<>(klass, ImmutableSet.copyOf(keys));
+  }
+
+  /**
+   * Projects nodes on partially loaded entities, with only the given properties set. Updating such
+   * an entity only writes the projected properties.
+   *
+   * @param klass Entity class
+   * @param keys  Property keys, case insensitive
+   * @param <T>   Type of the entity
+   * @return Projection on the given properties
+   */
+  public static <T> Projection<T> properties(final Class<T> klass, final String... keys) {
+    final EntityMeta<T> meta = EntityMeta.of(klass);
+    final ImmutableSet.Builder<String> lowercase = ImmutableSet.builder();
+    for (String key : keys) {
+      final String property = key.toLowerCase();
+      Preconditions.checkArgument(!meta.getAccessors(property).isEmpty(),
+          "%s has no field %s", klass, key);
+      lowercase.add(property);
+    }
+    return new Projection<>(klass, lowercase.build());
+  }
+
+  public Class<P> getProjectedClass() {
+    return klass;
+  }
+
+  /**
+   * @return Lowercase property keys read from the nodes
+   */
+  public Set<String> getKeys() {
+    return keys;
+  }
+
+  /**
+   * Maps the node. Has to be called within a transaction.
+   */
+  P map(final Node node) {
+    return Beanify.project(node, klass, keys);
+  }
+}
@@ -0,0 +1,73 @@
+package ligo.repository;
+
+import java.util.List;
+
+/**
+ * One page of relatives, ordered by the @Ordered key of the relationship, newest first
+ */
+public class RelativesPage<V> {
+
+  private final List<V> relatives;
+  private final Cursor next;
+
+  RelativesPage(List<V> relatives, Cursor next) {
+    this.relatives = relatives;
+    this.next = next;
+  }
+
+  public List<V> getRelatives() {
+    return relatives;
+  }
+
+  /**
+   * @return Cursor to fetch the following page with, null if this is the last page
+   */
+  public Cursor getNext() {
+    return next;
+  }
+
+  public boolean hasNext() {
+    return next != null;
+  }
+
+  /**
+   * Position after the last relative of a page: its order value and the id of its relationship,
+   * which breaks ties between equal values.
+   */
+  public static final class Cursor {
+    private final long value;
+    private final long id;
+
+    public Cursor(long value, long id) {
+      this.value = value;
+      this.id = id;
+    }
+
+    /**
+     * Parses a cursor from its {@link #toString()} form, e.g. when it comes back from a client
+     *
+     * @param cursor String form
+     * @return Cursor
+     */
+    public static Cursor parse(String cursor) {
+      final String[] parts = cursor.split(":");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Not a cursor : " + cursor);
+      }
+      return new Cursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+    }
+
+    public long getValue() {
+      return value;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    @Override
+    public String toString() {
+      return value + ":" + id;
+    }
+  }
+}
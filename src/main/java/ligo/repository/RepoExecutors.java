@@ -0,0 +1,107 @@
+package ligo.repository;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded executors running repo operations off the calling threads, one pool for reads and one
+ * for writes so that slow writes do not starve reads. Each pool has a fixed number of threads and
+ * a bounded queue. Once a queue is full, new operations are shed: they get a future failed with a
+ * RejectedExecutionException instead of waiting.
+ */
+public class RepoExecutors {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RepoExecutors.class);
+  private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+  private final ListeningExecutorService reads;
+  private final ListeningExecutorService writes;
+  private final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * Twice as many read threads as processors and 2 write threads, as embedded writes contend on
+   * locks, each with a queue of 1000 operations
+   */
+  public RepoExecutors() {
+    this(2 * Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_SIZE, 2, DEFAULT_QUEUE_SIZE);
+  }
+
+  /**
+   * @param readThreads    Number of threads running reads
+   * @param readQueueSize  Number of reads waiting for a thread before reads are shed
+   * @param writeThreads   Number of threads running writes
+   * @param writeQueueSize Number of writes waiting for a thread before writes are shed
+   */
+  public RepoExecutors(final int readThreads, final int readQueueSize, final int writeThreads,
+                       final int writeQueueSize) {
+    this.reads = newPool("ligo-read-%d", readThreads, readQueueSize);
+    this.writes = newPool("ligo-write-%d", writeThreads, writeQueueSize);
+  }
+
+  private static ListeningExecutorService newPool(final String nameFormat, final int threads,
+                                                  final int queueSize) {
+    Preconditions.checkArgument(threads > 0, "threads should be positive");
+    Preconditions.checkArgument(queueSize > 0, "queueSize should be positive");
+    return MoreExecutors.listeningDecorator(new ThreadPoolExecutor(threads, threads,
+        0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+        new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build(),
+        new ThreadPoolExecutor.AbortPolicy()));
+  }
+
+  /**
+   * Runs the read on the read pool
+   *
+   * @return Future of the result, failed with RejectedExecutionException if the pool is saturated
+   */
+  public <V> ListenableFuture<V> read(final Callable<V> read) {
+    return submit(reads, read);
+  }
+
+  /**
+   * Runs the write on the write pool
+   *
+   * @return Future of the result, failed with RejectedExecutionException if the pool is saturated
+   */
+  public <V> ListenableFuture<V> write(final Callable<V> write) {
+    return submit(writes, write);
+  }
+
+  private <V> ListenableFuture<V> submit(final ListeningExecutorService pool,
+                                         final Callable<V> operation) {
+    try {
+      return pool.submit(operation);
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Shedding operation {}", operation);
+      rejected.incrementAndGet();
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
+  /**
+   * @return Number of operations shed so far
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * Stops accepting operations. Queued operations still run.
+   */
+  public void shutdown() {
+    reads.shutdown();
+    writes.shutdown();
+  }
+}
@@ -0,0 +1,144 @@
+package ligo.repository;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Sets;
+import ligo.cache.BoundedCache;
+import ligo.cache.CacheStats;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the node ids matching full-text queries, with one cache per index. Writes to an index are
+ * recorded on the writing thread, and invalidate the cache of that index only once their
+ * transaction is committed, which also covers writes made within a caller's transaction.
+ */
+class SearchCache implements TransactionEventHandler<Void> {
+
+  private static final Map<GraphDatabaseService, SearchCache> BY_DB = new IdentityHashMap<>();
+
+  private static final BoundedCache.Weigher<Key, long[]> IDS_WEIGHER =
+      new BoundedCache.Weigher<Key, long[]>() {
+        @Override
+        public long weigh(Key key, long[] ids) {
+          return 96 + 2 * (key.key.length() + key.query.length()) + 8 * ids.length;
+        }
+      };
+
+  private final Map<String, BoundedCache<Key, long[]>> caches = new ConcurrentHashMap<>();
+
+  private final ThreadLocal<Set<String>> pendingWrites = new ThreadLocal<Set<String>>() {
+    @Override
+    protected Set<String> initialValue() {
+      return Sets.newHashSet();
+    }
+  };
+
+  private SearchCache() {
+  }
+
+  /**
+   * @return Search cache of the given DB, shared by all its repos
+   */
+  static synchronized SearchCache of(GraphDatabaseService db) {
+    SearchCache searchCache = BY_DB.get(db);
+    if (searchCache == null) {
+      searchCache = new SearchCache();
+      db.registerTransactionEventHandler(searchCache);
+      BY_DB.put(db, searchCache);
+    }
+    return searchCache;
+  }
+
+  void enable(String indexName, int maxEntries, long maxWeight, long expireAfterMillis) {
+    caches.put(indexName, new BoundedCache<>(maxEntries, maxWeight, IDS_WEIGHER,
+        BoundedCache.Eviction.LRU, expireAfterMillis));
+  }
+
+  void disable(String indexName) {
+    caches.remove(indexName);
+  }
+
+  /**
+   * @return Cache of the index, null if its searches are not cached
+   */
+  BoundedCache<Key, long[]> get(String indexName) {
+    return caches.get(indexName);
+  }
+
+  CacheStats stats(String indexName) {
+    final BoundedCache<Key, long[]> cache = caches.get(indexName);
+    return cache == null ? null : cache.stats();
+  }
+
+  /**
+   * Records a write to the index by the current transaction. Has to be called within it.
+   */
+  void written(String indexName) {
+    if (caches.containsKey(indexName)) {
+      pendingWrites.get().add(indexName);
+    }
+  }
+
+  @Override
+  public Void beforeCommit(TransactionData data) throws Exception {
+    return null;
+  }
+
+  @Override
+  public void afterCommit(TransactionData data, Void state) {
+    final Set<String> written = pendingWrites.get();
+    for (String indexName : written) {
+      final BoundedCache<Key, long[]> cache = caches.get(indexName);
+      if (cache != null) {
+        cache.invalidateAll();
+      }
+    }
+    written.clear();
+  }
+
+  @Override
+  public void afterRollback(TransactionData data, Void state) {
+    pendingWrites.get().clear();
+  }
+
+  /**
+   * One page of hits of a query
+   */
+  static class Key {
+    private final String key;
+    private final String query;
+    private final int skip;
+    private final int limit;
+
+    Key(String key, String query, int skip, int limit) {
+      this.key = key;
+      this.query = query;
+      this.skip = skip;
+      this.limit = limit;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return skip == other.skip && limit == other.limit && key.equals(other.key)
+          && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(key, query, skip, limit);
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package ligo.repository;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Picks the shard of an entity from its routing key. Node ids are only unique within a shard, and
+ * relationships cannot cross shards, so the key has to be known before the entity is created and
+ * should place related entities together.
+ */
+public interface ShardKey {
+
+  /**
+   * Consistent hash of the key's hashCode, so that adding a shard moves only a share of the keys
+   */
+  ShardKey HASH = new ShardKey() {
+    @Override
+    public int shardOf(final Object key, final int shards) {
+      return Hashing.consistentHash(key.hashCode(), shards);
+    }
+  };
+
+  /**
+   * @param key    Routing key, e.g. the handle of a lion
+   * @param shards Number of shards
+   * @return Index of the shard, in [0, shards)
+   */
+  int shardOf(Object key, int shards);
+}
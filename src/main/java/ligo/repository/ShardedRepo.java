@@ -0,0 +1,97 @@
+package ligo.repository;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Routes the ops of a repo over several DBs, each with its own store directory and transaction
+ * log, see {@link EntityRepo#EntityRepo(ligo.config.DBConfig)}. Ops on one entity go to the shard
+ * of its routing key, reads across shards are scattered in parallel on the read pool of the given
+ * {@link RepoExecutors} and their results gathered.
+ *
+ * @param <R> Type of the repo of each shard
+ */
+public class ShardedRepo<R extends EntityRepo> {
+
+  private final List<R> shards;
+  private final ShardKey shardKey;
+  private final RepoExecutors executors;
+
+  /**
+   * @param shards    Repos of the shards, in a fixed order, as the routing depends on it
+   * @param shardKey  Picks the shard of a routing key
+   * @param executors Executors running the scattered reads
+   */
+  public ShardedRepo(final List<R> shards, final ShardKey shardKey,
+                     final RepoExecutors executors) {
+    Preconditions.checkArgument(!shards.isEmpty(), "shards should not be empty");
+    this.shards = ImmutableList.copyOf(shards);
+    this.shardKey = shardKey;
+    this.executors = executors;
+  }
+
+  /**
+   * @param key Routing key
+   * @return Repo of the shard the key belongs to
+   */
+  public R shardFor(final Object key) {
+    return shards.get(shardKey.shardOf(key, shards.size()));
+  }
+
+  /**
+   * @return Repos of the shards, in routing order
+   */
+  public List<R> getShards() {
+    return shards;
+  }
+
+  /**
+   * Runs the read on every shard in parallel
+   *
+   * @param read Read of one shard
+   * @return Future of the results of all the shards, in shard order. Fails if any read fails.
+   */
+  public <V> ListenableFuture<List<V>> scatter(final Function<? super R, ? extends V> read) {
+    final List<ListenableFuture<V>> reads = Lists.newArrayListWithCapacity(shards.size());
+    for (final R shard : shards) {
+      reads.add(executors.read(new Callable<V>() {
+        @Override
+        public V call() {
+          return read.apply(shard);
+        }
+      }));
+    }
+    return Futures.allAsList(reads);
+  }
+
+  /**
+   * Runs the read on every shard in parallel and merges the results
+   *
+   * @param read Read of one shard, null when the shard has no result as EntityRepo finds return
+   * @return Future of the results of all the shards, in shard order. Fails if any read fails.
+   */
+  public <V> ListenableFuture<List<V>> scatterGather(
+      final Function<? super R, ? extends Collection<? extends V>> read) {
+    return Futures.transform(scatter(read),
+        new Function<List<Collection<? extends V>>, List<V>>() {
+          @Override
+          public List<V> apply(List<Collection<? extends V>> results) {
+            final List<V> merged = Lists.newArrayList();
+            for (Collection<? extends V> result : results) {
+              if (result != null) {
+                merged.addAll(result);
+              }
+            }
+            return merged;
+          }
+        });
+  }
+}
@@ -0,0 +1,385 @@
+package ligo.repository;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import ligo.meta.BaseRelationship;
+import ligo.meta.Bucketed;
+import ligo.utils.Beanify;
+import ligo.utils.EntityUtils;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.PathExpander;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterable;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.traversal.BranchState;
+import org.neo4j.graphdb.traversal.Evaluation;
+import org.neo4j.graphdb.traversal.InitialBranchState;
+import org.neo4j.graphdb.traversal.PathEvaluator;
+import org.neo4j.graphdb.traversal.Uniqueness;
+import org.neo4j.graphdb.traversal.UniquenessFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Multi-hop traversal from one entity, built with {@link EntityRepo#traverse(Object)}. Each step
+ * follows one relationship, and may filter the nodes it reaches on their properties. The whole
+ * traversal runs in one transaction on the Neo4j traversal framework, breadth first, and only the
+ * nodes reached by the last step are mapped to entities. Intermediate nodes are never mapped.
+ * <p/>
+ * Traversals are immutable, every builder method returns a new one.
+ *
+ * @param <T> Type of the entities reached by the last step
+ */
+public class Traversal<T> {
+
+  private static final Set<Position> START = ImmutableSet.of(new Position(0, 0));
+
+  private final GraphDatabaseService db;
+  private final long startId;
+  private final Class<T> klass;
+  private final ImmutableList<Step> steps;
+  private final UniquenessFactory uniqueness;
+  private final int limit;
+
+  Traversal(GraphDatabaseService db, long startId, Class<T> klass) {
+    this(db, startId, klass, ImmutableList.<Step>of(), Uniqueness.NODE_PATH, Integer.MAX_VALUE);
+  }
+
+  private Traversal(GraphDatabaseService db, long startId, Class<T> klass,
+                    ImmutableList<Step> steps, UniquenessFactory uniqueness, int limit) {
+    this.db = db;
+    this.startId = startId;
+    this.klass = klass;
+    this.steps = steps;
+    this.uniqueness = uniqueness;
+    this.limit = limit;
+  }
+
+  private static <R extends BaseRelationship<?, ?>> R followable(final R relationship) {
+    // Paths would go through the bucket nodes
+    Preconditions.checkArgument(!relationship.getClass().isAnnotationPresent(Bucketed.class),
+        "Traversals do not follow @Bucketed relationships");
+    return relationship;
+  }
+
+  /**
+   * Follows the relationship for one hop
+   *
+   * @param relationship Relationship, with the direction to follow
+   * @param <N>          Type of the entities reached
+   * @return Traversal reaching the relatives
+   */
+  public <N> Traversal<N> then(final BaseRelationship<T, N> relationship) {
+    return new Traversal<>(db, startId, otherType(relationship),
+        append(new Step(followable(relationship), 1, 1)), uniqueness, limit);
+  }
+
+  /**
+   * Follows the relationship for minHops up to maxHops hops, reaching entities of the same type
+   *
+   * @param relationship Relationship between entities of the same type, with the direction to
+   *                     follow
+   * @param minHops      Minimum number of hops, at least 1
+   * @param maxHops      Maximum number of hops
+   * @return Traversal reaching the relatives at any of the allowed depths
+   */
+  public Traversal<T> repeat(final BaseRelationship<T, T> relationship, final int minHops,
+                             final int maxHops) {
+    Preconditions.checkArgument(minHops >= 1 && maxHops >= minHops,
+        "Expecting 1 <= minHops <= maxHops");
+    return new Traversal<>(db, startId, klass, append(new Step(followable(relationship), minHops, maxHops)),
+        uniqueness, limit);
+  }
+
+  /**
+   * Keeps only the nodes of the last step whose property matches the predicate. The predicate gets
+   * null for nodes without the property.
+   *
+   * @param key       Property key, as stored by EntityRepo
+   * @param predicate Predicate on the property value
+   * @return Traversal with the filter
+   */
+  public Traversal<T> where(final String key, final Predicate<Object> predicate) {
+    Preconditions.checkState(!steps.isEmpty(), "where() applies to the last step, add one first");
+    final Step last = steps.get(steps.size() - 1);
+    final List<Step> filtered = Lists.newArrayList(steps.subList(0, steps.size() - 1));
+    filtered.add(last.with(key.toLowerCase(), predicate));
+    return new Traversal<>(db, startId, klass, ImmutableList.copyOf(filtered), uniqueness, limit);
+  }
+
+  /**
+   * Keeps only the nodes of the last step whose property equals the value
+   */
+  public Traversal<T> where(final String key, final Object value) {
+    return where(key, Predicates.equalTo(value));
+  }
+
+  /**
+   * @param uniqueness Uniqueness of the traversal. Defaults to NODE_PATH, so that no path goes
+   *                   through the same node twice.
+   */
+  public Traversal<T> unique(final UniquenessFactory uniqueness) {
+    return new Traversal<>(db, startId, klass, steps, uniqueness, limit);
+  }
+
+  /**
+   * @param limit Maximum number of entities returned
+   */
+  public Traversal<T> limit(final int limit) {
+    Preconditions.checkArgument(limit >= 0, "limit should not be negative");
+    return new Traversal<>(db, startId, klass, steps, uniqueness, limit);
+  }
+
+  /**
+   * Runs the traversal
+   *
+   * @return Distinct entities reached by the last step, nearest first
+   */
+  public List<T> list() {
+    Preconditions.checkState(!steps.isEmpty(), "Traversal has no step");
+    final List<T> results = Lists.newArrayList();
+    final Set<Long> seen = Sets.newHashSet();
+    final Run run = new Run(steps);
+
+    try (Transaction tx = db.beginTx()) {
+      final ResourceIterable<Node> nodes = db.traversalDescription()
+          .breadthFirst()
+          .uniqueness(uniqueness)
+          .expand(run, new InitialBranchState.State<Set<Position>>(START, START))
+          .evaluator(run)
+          .traverse(db.getNodeById(startId))
+          .nodes();
+      try (ResourceIterator<Node> iterator = nodes.iterator()) {
+        while (results.size() < limit && iterator.hasNext()) {
+          final Node node = iterator.next();
+          if (seen.add(node.getId())) {
+            results.add(Beanify.get(node, klass));
+          }
+        }
+      }
+      tx.success();
+    }
+    return results;
+  }
+
+  private ImmutableList<Step> append(final Step step) {
+    return ImmutableList.<Step>builder().addAll(steps).add(step).build();
+  }
+
+  private <N> Class<N> otherType(final BaseRelationship<T, N> relationship) {
+    return (Class<N>) relationship.getRelationType().getOtherNodeType(klass);
+  }
+
+  /**
+   * Where a path may stand: number of hops done in a step. The start node is at 0 hops of the
+   * first step.
+   */
+  private static final class Position {
+    private final int step;
+    private final int hops;
+
+    private Position(int step, int hops) {
+      this.step = step;
+      this.hops = hops;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Position && ((Position) o).step == step && ((Position) o).hops == hops;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * step + hops;
+    }
+  }
+
+  private static final class Step {
+    private final RelationshipType type;
+    private final Direction direction;
+    private final int minHops;
+    private final int maxHops;
+    private final ImmutableList<Map.Entry<String, Predicate<Object>>> filters;
+
+    private Step(BaseRelationship<?, ?> relationship, int minHops, int maxHops) {
+      this(relationship.getRelationType(), relationship.getDirection(), minHops, maxHops,
+          ImmutableList.<Map.Entry<String, Predicate<Object>>>of());
+    }
+
+    private Step(RelationshipType type, Direction direction, int minHops, int maxHops,
+                 ImmutableList<Map.Entry<String, Predicate<Object>>> filters) {
+      this.type = type;
+      this.direction = direction;
+      this.minHops = minHops;
+      this.maxHops = maxHops;
+      this.filters = filters;
+    }
+
+    /**
+     * @return Same step in the other direction, without filters
+     */
+    private Step reversed() {
+      return new Step(type, direction.reverse(), minHops, maxHops,
+          ImmutableList.<Map.Entry<String, Predicate<Object>>>of());
+    }
+
+    private Step with(String key, Predicate<Object> predicate) {
+      return new Step(type, direction, minHops, maxHops,
+          ImmutableList.<Map.Entry<String, Predicate<Object>>>builder().addAll(filters)
+              .add(Maps.immutableEntry(key, predicate)).build());
+    }
+
+    private boolean follows(Relationship relationship, Node from) {
+      if (!relationship.isType(type)) {
+        return false;
+      }
+      switch (direction) {
+        case OUTGOING:
+          return relationship.getStartNode().equals(from);
+        case INCOMING:
+          return relationship.getEndNode().equals(from);
+        default:
+          return true;
+      }
+    }
+
+    private boolean accepts(Node node) {
+      for (Map.Entry<String, Predicate<Object>> filter : filters) {
+        if (!filter.getValue().apply(node.getProperty(filter.getKey(), null))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Expander and evaluator of one run. The branch state of a path is the set of positions its end
+   * node may stand at, so that steps following the same relationship type stay apart.
+   */
+  private final class Run extends PathEvaluator.Adapter<Set<Position>>
+      implements PathExpander<Set<Position>> {
+
+    private final ImmutableList<Step> steps;
+
+    /**
+     * Filter results by step and node id, as a node is reached by many paths
+     */
+    private final List<Map<Long, Boolean>> accepted = Lists.newArrayList();
+
+    private Run(ImmutableList<Step> steps) {
+      this.steps = steps;
+      for (int i = 0; i < steps.size(); i++) {
+        accepted.add(Maps.<Long, Boolean>newHashMap());
+      }
+    }
+
+    @Override
+    public Iterable<Relationship> expand(Path path, BranchState<Set<Position>> state) {
+      final Set<Position> positions =
+          path.length() == 0 ? state.getState() : advance(state.getState(), path);
+      state.setState(positions);
+
+      final Set<Integer> next = Sets.newTreeSet();
+      for (Position position : positions) {
+        if (position.hops < steps.get(position.step).maxHops) {
+          next.add(position.step);
+        }
+        if (canLeave(position)) {
+          next.add(position.step + 1);
+        }
+      }
+      final Map<String, Iterable<Relationship>> relationships = Maps.newLinkedHashMap();
+      for (int step : next) {
+        final Step candidate = steps.get(step);
+        final String key = candidate.type.name() + ":" + candidate.direction;
+        if (!relationships.containsKey(key)) {
+          relationships.put(key,
+              path.endNode().getRelationships(candidate.type, candidate.direction));
+        }
+      }
+      return Iterables.concat(relationships.values());
+    }
+
+    @Override
+    public Evaluation evaluate(Path path, BranchState<Set<Position>> state) {
+      if (path.length() == 0) {
+        return Evaluation.EXCLUDE_AND_CONTINUE;
+      }
+      final Set<Position> positions = advance(state.getState(), path);
+      boolean last = false;
+      boolean more = false;
+      for (Position position : positions) {
+        final Step step = steps.get(position.step);
+        last |= position.step == steps.size() - 1 && position.hops >= step.minHops;
+        more |= position.hops < step.maxHops || canLeave(position);
+      }
+      return Evaluation.of(last, more);
+    }
+
+    /**
+     * @return Run of the same steps walked backwards, from the nodes reached by the last step to the
+     * start node, e.g. for bidirectional path finding. Filters are left out, as they select the
+     * nodes a hop reaches walking forward.
+     */
+    @Override
+    public PathExpander<Set<Position>> reverse() {
+      final ImmutableList.Builder<Step> reversed = ImmutableList.builder();
+      for (Step step : steps.reverse()) {
+        reversed.add(step.reversed());
+      }
+      return new Run(reversed.build());
+    }
+
+    private boolean canLeave(Position position) {
+      return position.hops >= steps.get(position.step).minHops
+          && position.step + 1 < steps.size();
+    }
+
+    /**
+     * Positions of the end node of the path, from the positions of the node before it
+     */
+    private Set<Position> advance(Set<Position> previous, Path path) {
+      final Relationship relationship = path.lastRelationship();
+      final Node node = path.endNode();
+      final Node from = relationship.getOtherNode(node);
+      final Set<Position> positions = Sets.newHashSet();
+      for (Position position : previous) {
+        final Step step = steps.get(position.step);
+        if (position.hops < step.maxHops && step.follows(relationship, from)
+            && accepts(position.step, node)) {
+          positions.add(new Position(position.step, position.hops + 1));
+        }
+        if (canLeave(position) && steps.get(position.step + 1).follows(relationship, from)
+            && accepts(position.step + 1, node)) {
+          positions.add(new Position(position.step + 1, 1));
+        }
+      }
+      return positions;
+    }
+
+    private boolean accepts(int step, Node node) {
+      Boolean accepts = accepted.get(step).get(node.getId());
+      if (accepts == null) {
+        // Nodes being deleted are neither reached nor gone through
+        accepts = !EntityUtils.isDeleting(node) && steps.get(step).accepts(node);
+        accepted.get(step).put(node.getId(), accepts);
+      }
+      return accepts;
+    }
+  }
+}
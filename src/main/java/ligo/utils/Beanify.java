@@ -1,16 +1,15 @@
 package ligo.utils;
 
-import ligo.exceptions.IllegalReflectionOperation;
+import com.google.common.collect.ImmutableMap;
+import ligo.meta.BaseRelationship;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-
-import static org.reflections.ReflectionUtils.getAllFields;
+import java.util.Set;
 
 /**
  * Converts Node/Relations to Objects
@@ -18,13 +17,15 @@ import static org.reflections.ReflectionUtils.getAllFields;
 public class Beanify {
 
   private static final Logger LOG = LoggerFactory.getLogger(Beanify.class);
+  private static final String ID = "id";
 
   //Ensure that no one instantiates this util class
   private Beanify() {
   }
 
   /**
-   * Converts given Node into an object of Class klass
+   * Converts given Node into an object of Class klass. @Relatives fields get a
+   * {@link LazyRelatives} list.
    *
    * @param node  Neo4j Node
    * @param klass Class
@@ -32,27 +33,137 @@ public class Beanify {
    * @throws ligo.exceptions.IllegalReflectionOperation
    */
   public static <T> T get(Node node, Class<T> klass) {
+    return get(node, klass, false);
+  }
+
+  /**
+   * Converts given Node into an object of Class klass, optionally tracking the loaded properties
+   * with {@link LoadedState} so that updates only write what changed since
+   *
+   * @param node  Neo4j Node
+   * @param klass Class
+   * @param track true to track the loaded properties, for instances about to be updated
+   * @return populated instance of type klass
+   */
+  public static <T> T get(Node node, Class<T> klass, boolean track) {
+
+    if (node == null)
+      return null;
+    final EntityMeta<T> meta = EntityMeta.of(klass);
+    final T instance = meta.newInstance();
+    final ImmutableMap.Builder<String, Object> loaded =
+        track ? ImmutableMap.<String, Object>builder() : null;
+
+    for (String key : node.getPropertyKeys()) {
+      final List<FieldAccessor> accessors = meta.getAccessors(key);
+      if (!accessors.isEmpty()) {
+        final Object value = node.getProperty(key);
+        for (FieldAccessor accessor : accessors) {
+          accessor.set(instance, value);
+        }
+        if (track) {
+          loaded.put(key, value);
+        }
+      }
+    }
+    for (FieldAccessor accessor : meta.getAccessors(ID)) {
+      accessor.set(instance, node.getId());
+    }
+    setRelatives(instance, meta, node.getGraphDatabase(), node.getId());
+    if (track) {
+      LoadedState.track(instance, loaded.build());
+    }
+
+    return instance;
+  }
+
+  /**
+   * Converts given Node into an object of Class klass, reading only the given property keys. Other
+   * fields keep their default values. The keys read into instances of @Entity classes are tracked
+   * with {@link LoadedState}, so that updates leave the other properties alone.
+   *
+   * @param node  Neo4j Node
+   * @param klass Class, with a public no-arg constructor
+   * @param keys  Lowercase property keys to read
+   * @return instance of type klass populated with the given keys
+   */
+  public static <T> T project(Node node, Class<T> klass, Set<String> keys) {
 
     if (node == null)
       return null;
-    T instance = null;
-    try {
-      instance = klass.getConstructor().newInstance();
-    } catch (InvocationTargetException | IllegalAccessException | NoSuchMethodException |
-        InstantiationException e) {
-      throw new IllegalReflectionOperation(e);
+    final EntityMeta<T> meta = EntityMeta.of(klass);
+    final T instance = meta.newInstance();
+
+    for (String key : keys) {
+      final Object value = ID.equals(key) ? null : node.getProperty(key, null);
+      if (value != null) {
+        for (FieldAccessor accessor : meta.getAccessors(key)) {
+          accessor.set(instance, value);
+        }
+      }
     }
+    for (FieldAccessor accessor : meta.getAccessors(ID)) {
+      accessor.set(instance, node.getId());
+    }
+    if (meta.isEntity()) {
+      setRelatives(instance, meta, node.getGraphDatabase(), node.getId());
+      LoadedState.track(instance, null, keys);
+    }
+
+    return instance;
+  }
 
-    Map<String, Object> properties = new HashMap<>();
+  /**
+   * Copies the properties of the given Node that map to fields of Class klass, so that instances can
+   * be built later on without the Node nor a transaction.
+   *
+   * @param node  Neo4j Node
+   * @param klass Class
+   * @return Immutable map of the mapped properties
+   */
+  public static <T> Map<String, Object> snapshot(Node node, Class<T> klass) {
+    final EntityMeta<T> meta = EntityMeta.of(klass);
+    final ImmutableMap.Builder<String, Object> properties = ImmutableMap.builder();
     for (String key : node.getPropertyKeys()) {
-      properties.put(key, node.getProperty(key));
+      if (!meta.getAccessors(key).isEmpty()) {
+        properties.put(key, node.getProperty(key));
+      }
     }
-    properties.put("id", node.getId());
+    return properties.build();
+  }
 
+  /**
+   * Builds an object of Class klass from a snapshot of its node
+   *
+   * @param db         DB of the node, read by the @Relatives fields
+   * @param id         Node id
+   * @param properties Properties, as returned by {@link #snapshot(Node, Class)}
+   * @param klass      Class
+   * @return populated instance of type klass
+   */
+  public static <T> T get(GraphDatabaseService db, long id, Map<String, Object> properties,
+                          Class<T> klass) {
+    final EntityMeta<T> meta = EntityMeta.of(klass);
+    final T instance = meta.newInstance();
     populate(instance, properties);
+    for (FieldAccessor accessor : meta.getAccessors(ID)) {
+      accessor.set(instance, id);
+    }
+    setRelatives(instance, meta, db, id);
     return instance;
   }
 
+  private static <T> void setRelatives(T instance, EntityMeta<T> meta, GraphDatabaseService db,
+                                       long id) {
+    for (EntityMeta.RelativesField field : meta.getRelativesFields()) {
+      final BaseRelationship<?, ?> relationship = field.getRelationship();
+      field.getAccessor().set(instance, new LazyRelatives<>(db, id,
+          relationship.getRelationType(), relationship.getDirection(),
+          relationship.getRelationType().getOtherNodeType(meta.getEntityClass()),
+          field.getBatchSize()));
+    }
+  }
+
   /**
    * populates the instance with the given properties. All the property names are expected to be
    * lowercase. So all the camelCase properties in the instance will be changed to lowercase for
@@ -63,17 +174,10 @@ public class Beanify {
    */
   public static <T> void populate(T instance, Map<String, Object> properties) {
 
-    for (Field field : getAllFields(instance.getClass())) {
-
-      final String propertyName = field.getName().toLowerCase();
-
-      if (properties.containsKey(propertyName)) {
-        try {
-          field.setAccessible(true);
-          field.set(instance, properties.get(propertyName));
-        } catch (IllegalAccessException e) {
-          throw new IllegalReflectionOperation("Problem populating object", e);
-        }
+    final EntityMeta<?> meta = EntityMeta.of(instance.getClass());
+    for (Map.Entry<String, Object> property : properties.entrySet()) {
+      for (FieldAccessor accessor : meta.getAccessors(property.getKey())) {
+        accessor.set(instance, property.getValue());
       }
     }
   }
@@ -0,0 +1,190 @@
+package ligo.utils;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Map;
+
+/**
+ * Layout of @Bucketed relationships. They attach to bucket nodes, linked to their owner by a
+ * BUCKET_OF relationship and labeled BUCKET, instead of the owner itself. The helpers read the
+ * relationships of a node along with the ones of its buckets, whether their type is bucketed or
+ * not, so that callers see the same relationships in both layouts. All of them have to be called
+ * within a transaction.
+ */
+public class Buckets {
+
+  public static final Label BUCKET = DynamicLabel.label("_bucket");
+  public static final RelationshipType BUCKET_OF = DynamicRelationshipType.withName("_BUCKET_OF");
+  private static final String TYPE = "type";
+  private static final String SLOT = "slot";
+
+  //Ensure that no one instantiates this util class
+  private Buckets() {
+  }
+
+  /**
+   * Bucket of the owner in which the relationship of the given type from the given node goes.
+   * Creates it if missing, locking the owner only then.
+   *
+   * @param owner   Node the relationships relate to
+   * @param type    Relationship type
+   * @param fromId  Id of the node at the other end
+   * @param buckets Number of buckets of the owner
+   * @return Bucket node
+   */
+  public static Node bucketFor(final Node owner, final RelationshipType type, final long fromId,
+                               final int buckets) {
+    final int slot = slotOf(fromId, buckets);
+    Node bucket = find(owner, type, slot);
+    if (bucket == null) {
+      final GraphDatabaseService db = owner.getGraphDatabase();
+      try (Transaction tx = db.beginTx()) {
+        tx.acquireWriteLock(owner);
+        bucket = find(owner, type, slot);
+        if (bucket == null) {
+          bucket = db.createNode(BUCKET);
+          bucket.setProperty(TYPE, type.name());
+          bucket.setProperty(SLOT, slot);
+          bucket.createRelationshipTo(owner, BUCKET_OF);
+        }
+        tx.success();
+      }
+    }
+    return bucket;
+  }
+
+  /**
+   * @param fromId  Id of the node at the other end of the relationship
+   * @param buckets Number of buckets of the owner
+   * @return Slot of the bucket in which the relationship goes
+   */
+  public static int slotOf(final long fromId, final int buckets) {
+    Preconditions.checkArgument(buckets > 0, "buckets should be positive");
+    return (int) (((fromId * 0x9E3779B97F4A7C15L) >>> 33) % buckets);
+  }
+
+  /**
+   * Properties of the bucket of the given type and slot, for writers that do not go through the
+   * Node API, like the BulkImporter. Bucket nodes have no other property.
+   */
+  public static Map<String, Object> bucketProperties(final RelationshipType type, final int slot) {
+    return ImmutableMap.<String, Object>of(TYPE, type.name(), SLOT, slot);
+  }
+
+  private static Node find(final Node owner, final RelationshipType type, final int slot) {
+    for (Node bucket : bucketsOf(owner, type)) {
+      if (bucket.getProperty(SLOT).equals(slot)) {
+        return bucket;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return Buckets of the node holding relationships of the given type
+   */
+  public static Iterable<Node> bucketsOf(final Node node, final RelationshipType type) {
+    return Iterables.filter(bucketsOf(node), new Predicate<Node>() {
+      @Override
+      public boolean apply(Node bucket) {
+        return type.name().equals(bucket.getProperty(TYPE));
+      }
+    });
+  }
+
+  private static Iterable<Node> bucketsOf(final Node node) {
+    return Iterables.transform(node.getRelationships(BUCKET_OF, Direction.INCOMING),
+        new Function<Relationship, Node>() {
+          @Override
+          public Node apply(Relationship bucketOf) {
+            return bucketOf.getStartNode();
+          }
+        });
+  }
+
+  /**
+   * @return Relationships of the node and of its buckets, of the given type and direction
+   */
+  public static Iterable<Relationship> relationships(final Node node, final RelationshipType type,
+                                                     final Direction direction) {
+    return Iterables.concat(node.getRelationships(type, direction),
+        Iterables.concat(Iterables.transform(bucketsOf(node, type),
+            new Function<Node, Iterable<Relationship>>() {
+              @Override
+              public Iterable<Relationship> apply(Node bucket) {
+                return bucket.getRelationships(type, direction);
+              }
+            })));
+  }
+
+  /**
+   * @return All the relationships of the node and of its buckets, but the BUCKET_OF ones
+   */
+  public static Iterable<Relationship> relationships(final Node node) {
+    final Predicate<Relationship> notBucketOf = new Predicate<Relationship>() {
+      @Override
+      public boolean apply(Relationship relationship) {
+        return !relationship.isType(BUCKET_OF);
+      }
+    };
+    return Iterables.filter(Iterables.concat(node.getRelationships(),
+        Iterables.concat(Iterables.transform(bucketsOf(node),
+            new Function<Node, Iterable<Relationship>>() {
+              @Override
+              public Iterable<Relationship> apply(Node bucket) {
+                return bucket.getRelationships();
+              }
+            }))), notBucketOf);
+  }
+
+  /**
+   * Node at the other end of a relationship read from the given node, with buckets resolved to
+   * their owner
+   */
+  public static Node otherNode(final Relationship relationship, final Node node) {
+    final Node start = relationship.getStartNode();
+    final Node end = relationship.getEndNode();
+    final Node other;
+    if (start.equals(node)) {
+      other = end;
+    } else if (end.equals(node)) {
+      other = start;
+    } else {
+      // Relationship of a bucket of the node
+      other = start.hasLabel(BUCKET) ? end : start;
+    }
+    return ownerOf(other);
+  }
+
+  /**
+   * @return Owner of the node if it is a bucket, else the node itself
+   */
+  public static Node ownerOf(final Node node) {
+    return node.hasLabel(BUCKET) ?
+        node.getSingleRelationship(BUCKET_OF, Direction.OUTGOING).getEndNode() : node;
+  }
+
+  /**
+   * Deletes the buckets of the node. Their other relationships have to be deleted first.
+   */
+  public static void deleteBuckets(final Node node) {
+    for (Relationship bucketOf : node.getRelationships(BUCKET_OF, Direction.INCOMING)) {
+      final Node bucket = bucketOf.getStartNode();
+      bucketOf.delete();
+      bucket.delete();
+    }
+  }
+}
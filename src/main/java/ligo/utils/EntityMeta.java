@@ -0,0 +1,327 @@
+package ligo.utils;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import ligo.exceptions.IllegalLabelExtractionAttemptException;
+import ligo.exceptions.IllegalReflectionOperation;
+import ligo.meta.BaseRelationship;
+import ligo.meta.Entity;
+import ligo.meta.Id;
+import ligo.meta.IndexType;
+import ligo.meta.Indexed;
+import ligo.meta.Property;
+import ligo.meta.Relatives;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.Label;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.reflections.ReflectionUtils.getAllFields;
+
+/**
+ * Metadata of a class, built once from its ligo.meta annotations and cached for the life of the
+ * JVM. Holds the label, the id accessor, the persistable property accessors, the index
+ * definitions and the @Relatives fields.
+ */
+public final class EntityMeta<T> {
+
+  private static final ConcurrentMap<Class<?>, EntityMeta<?>> REGISTRY = new ConcurrentHashMap<>();
+
+  private final Class<T> klass;
+  private final String labelName;
+  private final Label label;
+  private final MethodHandle constructor;
+  private final ImmutableList<FieldAccessor> idAccessors;
+  private final ImmutableList<FieldAccessor> persistable;
+  private final ImmutableListMultimap<String, FieldAccessor> accessorsByKey;
+  private final ImmutableSet<Field> indexable;
+  private final ImmutableMap<String, String> fullTextIndexByKey;
+  private final ImmutableSet<String> exactIndexKeys;
+  private final ImmutableList<FieldAccessor> uniqueAccessors;
+  private final ImmutableList<RelativesField> relativesFields;
+
+  private EntityMeta(Class<T> klass) {
+    this.klass = klass;
+
+    if (klass.isAnnotationPresent(Entity.class)) {
+      final String annotatedLabel = klass.getAnnotation(Entity.class).label().toLowerCase();
+      this.labelName = annotatedLabel.isEmpty() ? klass.getSimpleName().toLowerCase() : annotatedLabel;
+      this.label = DynamicLabel.label(labelName);
+    } else {
+      this.labelName = null;
+      this.label = null;
+    }
+
+    this.constructor = findConstructor(klass);
+
+    final ImmutableList.Builder<FieldAccessor> idBuilder = ImmutableList.builder();
+    final ImmutableList.Builder<FieldAccessor> persistableBuilder = ImmutableList.builder();
+    final ImmutableListMultimap.Builder<String, FieldAccessor> byKeyBuilder =
+        ImmutableListMultimap.builder();
+    final ImmutableSet.Builder<Field> indexableBuilder = ImmutableSet.builder();
+    final ImmutableMap.Builder<String, String> fullTextBuilder = ImmutableMap.builder();
+    final ImmutableSet.Builder<String> exactBuilder = ImmutableSet.builder();
+    final ImmutableList.Builder<FieldAccessor> uniqueBuilder = ImmutableList.builder();
+    final ImmutableList.Builder<RelativesField> relativesBuilder = ImmutableList.builder();
+
+    for (Field field : getAllFields(klass)) {
+      if (Modifier.isStatic(field.getModifiers())) {
+        continue;
+      }
+      final FieldAccessor accessor = new FieldAccessor(field);
+      byKeyBuilder.put(accessor.getKey(), accessor);
+
+      final boolean isId = field.isAnnotationPresent(Id.class);
+      if (isId) {
+        idBuilder.add(accessor);
+      }
+      if (isId || field.isAnnotationPresent(Property.class)) {
+        persistableBuilder.add(accessor);
+      }
+
+      final Relatives relatives = field.getAnnotation(Relatives.class);
+      if (relatives != null) {
+        relativesBuilder.add(new RelativesField(accessor,
+            instantiate(relatives.value()), relatives.batchSize()));
+      }
+
+      final Indexed indexed = field.getAnnotation(Indexed.class);
+      if (indexed != null) {
+        indexableBuilder.add(field);
+        if (indexed.type() == IndexType.FULL_TEXT) {
+          fullTextBuilder.put(accessor.getKey(), indexed.name());
+        } else {
+          exactBuilder.add(accessor.getKey());
+          if (indexed.unique()) {
+            uniqueBuilder.add(accessor);
+          }
+        }
+      }
+    }
+
+    this.idAccessors = idBuilder.build();
+    this.persistable = persistableBuilder.build();
+    this.accessorsByKey = byKeyBuilder.build();
+    this.indexable = indexableBuilder.build();
+    this.fullTextIndexByKey = fullTextBuilder.build();
+    this.exactIndexKeys = exactBuilder.build();
+    this.uniqueAccessors = uniqueBuilder.build();
+    this.relativesFields = relativesBuilder.build();
+  }
+
+  /**
+   * Get the metadata of the given class, building it on first use
+   *
+   * @param klass Class
+   * @param <T>   Type of class
+   * @return Cached metadata
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> EntityMeta<T> of(Class<T> klass) {
+    EntityMeta<?> meta = REGISTRY.get(klass);
+    if (meta == null) {
+      final EntityMeta<?> built = new EntityMeta<>(klass);
+      meta = REGISTRY.putIfAbsent(klass, built);
+      if (meta == null) {
+        meta = built;
+      }
+    }
+    return (EntityMeta<T>) meta;
+  }
+
+  private static MethodHandle findConstructor(Class<?> klass) {
+    try {
+      final Constructor<?> noArg = klass.getConstructor();
+      noArg.setAccessible(true);
+      return MethodHandles.lookup().unreflectConstructor(noArg)
+          .asType(MethodType.methodType(Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+      // Not every class is instantiated by ligo, e.g. instances passed to Beanify.populate
+      return null;
+    }
+  }
+
+  private static BaseRelationship<?, ?> instantiate(Class<? extends BaseRelationship> type) {
+    try {
+      try {
+        final Method factory = type.getMethod("newInstance");
+        if (Modifier.isStatic(factory.getModifiers())) {
+          return (BaseRelationship<?, ?>) factory.invoke(null);
+        }
+      } catch (NoSuchMethodException e) {
+        // Falls back to the no-arg constructor
+      }
+      final Constructor<? extends BaseRelationship> noArg = type.getDeclaredConstructor();
+      noArg.setAccessible(true);
+      return noArg.newInstance();
+    } catch (ReflectiveOperationException | SecurityException e) {
+      throw new IllegalReflectionOperation("Cannot instantiate relationship " + type, e);
+    }
+  }
+
+  public Class<T> getEntityClass() {
+    return klass;
+  }
+
+  /**
+   * @return true if the class carries the @Entity annotation
+   */
+  public boolean isEntity() {
+    return label != null;
+  }
+
+  /**
+   * @return Lowercase label name
+   * @throws IllegalLabelExtractionAttemptException if the class does not have @Entity annotation
+   */
+  public String getLabelName() {
+    if (labelName == null) {
+      throw new IllegalLabelExtractionAttemptException("class does not have @Entity annotation");
+    }
+    return labelName;
+  }
+
+  /**
+   * @return Label of the nodes of this class
+   * @throws IllegalLabelExtractionAttemptException if the class does not have @Entity annotation
+   */
+  public Label getLabel() {
+    if (label == null) {
+      throw new IllegalLabelExtractionAttemptException("class does not have @Entity annotation");
+    }
+    return label;
+  }
+
+  /**
+   * Creates a blank instance through the public no-arg constructor
+   *
+   * @return new instance
+   */
+  public T newInstance() {
+    if (constructor == null) {
+      throw new IllegalReflectionOperation("No public no-arg constructor for " + klass);
+    }
+    try {
+      return klass.cast((Object) constructor.invokeExact());
+    } catch (Throwable t) {
+      Throwables.propagateIfInstanceOf(t, Error.class);
+      throw new IllegalReflectionOperation(t);
+    }
+  }
+
+  /**
+   * @return true if exactly one field carries @Id
+   */
+  public boolean hasId() {
+    return idAccessors.size() == 1;
+  }
+
+  /**
+   * @return Accessor of the single @Id field
+   */
+  public FieldAccessor getIdAccessor() {
+    if (!hasId()) {
+      throw new IllegalReflectionOperation("@Id should be used exactly once for a class : " + klass);
+    }
+    return idAccessors.get(0);
+  }
+
+  /**
+   * @return Accessors of all @Property and @Id fields
+   */
+  public List<FieldAccessor> getPersistable() {
+    return persistable;
+  }
+
+  /**
+   * All accessors whose lowercase field name equals the given key
+   *
+   * @param key Lowercase property key
+   * @return Accessors, empty if none match
+   */
+  public List<FieldAccessor> getAccessors(String key) {
+    return accessorsByKey.get(key);
+  }
+
+  /**
+   * @return Lowercase keys of all the non-static fields
+   */
+  public ImmutableSet<String> getKeys() {
+    return accessorsByKey.keySet();
+  }
+
+  /**
+   * @return Fields carrying @Indexed
+   */
+  public ImmutableSet<Field> getIndexable() {
+    return indexable;
+  }
+
+  /**
+   * @return Property key to full text index name, for all FULL_TEXT @Indexed fields
+   */
+  public ImmutableMap<String, String> getFullTextIndexNames() {
+    return fullTextIndexByKey;
+  }
+
+  /**
+   * @return Property keys of all EXACT @Indexed fields
+   */
+  public ImmutableSet<String> getExactIndexKeys() {
+    return exactIndexKeys;
+  }
+
+  /**
+   * @return Accessors of the EXACT @Indexed fields backed by a uniqueness constraint
+   */
+  public ImmutableList<FieldAccessor> getUniqueAccessors() {
+    return uniqueAccessors;
+  }
+
+  /**
+   * @return Fields annotated with @Relatives
+   */
+  public ImmutableList<RelativesField> getRelativesFields() {
+    return relativesFields;
+  }
+
+  /**
+   * A @Relatives field, with an instance of its relationship
+   */
+  public static final class RelativesField {
+    private final FieldAccessor accessor;
+    private final BaseRelationship<?, ?> relationship;
+    private final int batchSize;
+
+    private RelativesField(FieldAccessor accessor, BaseRelationship<?, ?> relationship,
+                           int batchSize) {
+      this.accessor = accessor;
+      this.relationship = relationship;
+      this.batchSize = batchSize;
+    }
+
+    public FieldAccessor getAccessor() {
+      return accessor;
+    }
+
+    public BaseRelationship<?, ?> getRelationship() {
+      return relationship;
+    }
+
+    public int getBatchSize() {
+      return batchSize;
+    }
+  }
+}
@@ -1,12 +1,17 @@
 package ligo.utils;
 
 import com.google.common.collect.Maps;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import ligo.exceptions.IllegalLabelExtractionAttemptException;
 import ligo.exceptions.IllegalReflectionOperation;
 import ligo.meta.Entity;
-import ligo.meta.Id;
-import ligo.meta.Indexed;
-import ligo.meta.Property;
+import ligo.meta.Relatives;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,16 +19,58 @@ import java.lang.reflect.Field;
 import java.util.Map;
 import java.util.Set;
 
-import static org.reflections.ReflectionUtils.getAllFields;
-import static org.reflections.ReflectionUtils.withAnnotation;
-
 /**
- * Helper static methods for entities
+ * Helper static methods for entities. Class metadata is looked up through {@link EntityMeta}, so
+ * the class hierarchy is scanned only once per class.
  */
 public class EntityUtils {
 
   private static final Logger LOG = LoggerFactory.getLogger(EntityUtils.class);
 
+  /**
+   * Label of the nodes being deleted, in place of their own labels while their relationships are
+   * drained
+   */
+  public static final Label DELETING = DynamicLabel.label("_deleting");
+
+  /**
+   * Skips the @Relatives fields, whose lazy lists would read the DB
+   */
+  public static final ExclusionStrategy SKIP_RELATIVES = new ExclusionStrategy() {
+    @Override
+    public boolean shouldSkipField(FieldAttributes field) {
+      return field.getAnnotation(Relatives.class) != null;
+    }
+
+    @Override
+    public boolean shouldSkipClass(Class<?> klass) {
+      return false;
+    }
+  };
+
+  private static final Gson GSON =
+      new GsonBuilder().setExclusionStrategies(SKIP_RELATIVES).create();
+
+  /**
+   * Tells whether the node is being deleted. Such nodes are still reachable through the
+   * relationships left to drain, and every read walking relationships has to skip them. Has to be
+   * called within a transaction.
+   *
+   * @param node Node
+   * @return true if the node is hidden until its relationships are drained
+   */
+  public static boolean isDeleting(Node node) {
+    return node.hasLabel(DELETING);
+  }
+
+  /**
+   * @param t Instance of the entity
+   * @return JSON of the entity, without its @Relatives fields
+   */
+  public static String toJson(Object t) {
+    return GSON.toJson(t);
+  }
+
   /**
    * Extracts keys and values of all the @Property annotated fields
    *
@@ -32,21 +79,13 @@ public class EntityUtils {
    * @return Map of key, value of fields
    */
   public static <T> Map<String, Object> extractPersistableProperties(T t) {
-    Set<Field> allProperties =
-        getAllFields(t.getClass(), withAnnotation(Property.class));
-    allProperties.addAll(getAllFields(t.getClass(), withAnnotation(Id.class)));
     Map<String, Object> properties = null;
 
-    for (Field property : allProperties) {
-      property.setAccessible(true);
-      try {
-        if (properties == null) {
-          properties = Maps.newHashMap();
-        }
-        properties.put(property.getName().toLowerCase(), property.get(t));
-      } catch (IllegalAccessException e) {
-        new IllegalReflectionOperation(e);
+    for (FieldAccessor property : EntityMeta.of(t.getClass()).getPersistable()) {
+      if (properties == null) {
+        properties = Maps.newHashMap();
       }
+      properties.put(property.getKey(), property.get(t));
     }
 
     return properties;
@@ -66,12 +105,7 @@ public class EntityUtils {
       throw new IllegalLabelExtractionAttemptException("class does not have @Entity annotation");
     }
 
-    final String nodeLabel = ((Entity) klass.getAnnotation(Entity.class)).label().toLowerCase();
-    if (nodeLabel == null || nodeLabel.isEmpty()) {
-      return klass.getSimpleName().toLowerCase();
-    } else {
-      return nodeLabel;
-    }
+    return EntityMeta.of((Class<?>) klass).getLabelName();
   }
 
   /**
@@ -82,19 +116,11 @@ public class EntityUtils {
    * @return id
    */
   public static <T> Long extractId(T entity) {
-    Set<Field> allIdFields =
-        getAllFields(entity.getClass(), withAnnotation(Id.class));
-    if (allIdFields == null || allIdFields.size() != 1) {
-      throw new IllegalReflectionOperation("@Id should be used exactly once for a class : "
-          + entity.getClass());
-    }
-    Field idField = allIdFields.iterator().next();
-    idField.setAccessible(true);
-    try {
-      return ((Long) idField.get(entity));
-    } catch (IllegalAccessException e) {
+    final Object id = EntityMeta.of(entity.getClass()).getIdAccessor().get(entity);
+    if (id != null && !(id instanceof Long)) {
       throw new IllegalReflectionOperation("@Id supports only Long");
     }
+    return (Long) id;
   }
 
   /**
@@ -104,6 +130,6 @@ public class EntityUtils {
    * @return set of fields
    */
   public static Set<Field> extractIndexable(Class<?> klass) {
-    return getAllFields(klass, withAnnotation(Indexed.class));
+    return EntityMeta.of(klass).getIndexable();
   }
 }
@@ -0,0 +1,88 @@
+package ligo.utils;
+
+import com.google.common.base.Throwables;
+import ligo.exceptions.IllegalReflectionOperation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Compiled getter/setter pair for a single field. Handles are resolved once, when the owning
+ * {@link EntityMeta} is built, so reading and writing the field costs no reflective lookup.
+ */
+public final class FieldAccessor {
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType SETTER_TYPE =
+      MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final Field field;
+  private final String key;
+  private final MethodHandle getter;
+  private final MethodHandle setter;
+
+  FieldAccessor(Field field) {
+    this.field = field;
+    this.key = field.getName().toLowerCase();
+    field.setAccessible(true);
+    final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    try {
+      this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+      // final fields cannot be written through a method handle, they are skipped on population
+      this.setter = Modifier.isFinal(field.getModifiers()) ? null :
+          lookup.unreflectSetter(field).asType(SETTER_TYPE);
+    } catch (IllegalAccessException e) {
+      throw new IllegalReflectionOperation("Cannot access field " + field, e);
+    }
+  }
+
+  /**
+   * @return Underlying field
+   */
+  public Field getField() {
+    return field;
+  }
+
+  /**
+   * @return Lowercase field name, i.e. the key under which this field is persisted
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Reads the field from the given instance
+   *
+   * @param instance Owner instance
+   * @return Field value, boxed if primitive
+   */
+  public Object get(Object instance) {
+    try {
+      return (Object) getter.invokeExact(instance);
+    } catch (Throwable t) {
+      Throwables.propagateIfInstanceOf(t, Error.class);
+      throw new IllegalReflectionOperation("Problem reading " + field, t);
+    }
+  }
+
+  /**
+   * Writes the given value into the field of the instance. Final fields are left untouched.
+   *
+   * @param instance Owner instance
+   * @param value    Value to be set, unboxed if the field is primitive
+   */
+  public void set(Object instance, Object value) {
+    if (setter == null) {
+      return;
+    }
+    try {
+      setter.invokeExact(instance, value);
+    } catch (Throwable t) {
+      Throwables.propagateIfInstanceOf(t, Error.class);
+      throw new IllegalReflectionOperation("Problem populating object", t);
+    }
+  }
+}
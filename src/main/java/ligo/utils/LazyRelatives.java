@@ -0,0 +1,229 @@
+package ligo.utils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read only list of the relatives of a node, filled in by Beanify for @Relatives fields. Nothing
+ * is read until the list is accessed. Size is counted without reading the relationships, and
+ * isEmpty and contains stop at the first match. Any other access reads the ids of all the
+ * relatives. Relatives themselves are mapped by batches, one transaction per batch, as their
+ * positions are read. The list reflects the relationships at the time the ids are read. It is not
+ * thread safe.
+ * <p/>
+ * Reads go through the {@link Source} registered for the DB, if any, so that their transactions
+ * are the ones of the repos of that DB.
+ */
+public class LazyRelatives<V> extends AbstractList<V> {
+
+  /**
+   * Transactions and relationship counts of a DB
+   */
+  public interface Source {
+
+    Transaction beginTx();
+
+    /**
+     * @return Number of relationships of the node of the given type and direction. Has to be
+     * called within a transaction.
+     */
+    long count(Node node, RelationshipType type, Direction direction);
+  }
+
+  private static final Map<GraphDatabaseService, Source> SOURCES = new ConcurrentHashMap<>();
+
+  private final GraphDatabaseService db;
+  private final Source source;
+  private final long nodeId;
+  private final RelationshipType type;
+  private final Direction direction;
+  private final Class<V> klass;
+  private final int batchSize;
+
+  private long[] ids;
+  private Object[] relatives;
+  private int count = -1;
+
+  public LazyRelatives(GraphDatabaseService db, long nodeId, RelationshipType type,
+                       Direction direction, Class<V> klass, int batchSize) {
+    Preconditions.checkArgument(batchSize > 0, "batchSize should be positive");
+    this.db = db;
+    this.source = sourceOf(db);
+    this.nodeId = nodeId;
+    this.type = type;
+    this.direction = direction;
+    this.klass = klass;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Reads through the given source the relatives of the nodes of the DB
+   */
+  public static void readThrough(final GraphDatabaseService db, final Source source) {
+    SOURCES.put(db, source);
+  }
+
+  private static Source sourceOf(final GraphDatabaseService db) {
+    final Source source = SOURCES.get(db);
+    return source != null ? source : new Source() {
+      @Override
+      public Transaction beginTx() {
+        return db.beginTx();
+      }
+
+      @Override
+      public long count(Node node, RelationshipType type, Direction direction) {
+        long count = 0;
+        for (Relationship ignored : Buckets.relationships(node, type, direction)) {
+          count++;
+        }
+        return count;
+      }
+    };
+  }
+
+  /**
+   * @return Number of relatives. Until the ids are read, it is counted by the source, which
+   * includes the relatives being deleted.
+   */
+  @Override
+  public int size() {
+    if (ids != null) {
+      return ids.length;
+    }
+    if (count < 0) {
+      try (Transaction tx = source.beginTx()) {
+        count = Ints.saturatedCast(source.count(db.getNodeById(nodeId), type, direction));
+        tx.success();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return Relative at the given position, null if its node was deleted, or is being deleted,
+   * since the ids were read
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(int index) {
+    Preconditions.checkElementIndex(index, ids().length);
+    if (relatives[index] == null) {
+      load(index - index % batchSize);
+    }
+    return (V) relatives[index];
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return ids != null ? ids.length == 0 : !scan(null);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (ids != null) {
+      return indexOf(o) >= 0;
+    }
+    final Long id = idOf(o);
+    return id != null && scan(id);
+  }
+
+  /**
+   * @return true if a relative with the given id, or any relative for a null id, is found
+   * without reading the ids. Stops at the first one.
+   */
+  private boolean scan(final Long id) {
+    try (Transaction tx = source.beginTx()) {
+      final Node node = db.getNodeById(nodeId);
+      boolean found = false;
+      for (Relationship relationship : Buckets.relationships(node, type, direction)) {
+        final Node other = Buckets.otherNode(relationship, node);
+        if ((id == null || other.getId() == id) && !EntityUtils.isDeleting(other)) {
+          found = true;
+          break;
+        }
+      }
+      tx.success();
+      return found;
+    }
+  }
+
+  @Override
+  public int indexOf(Object o) {
+    final Long id = idOf(o);
+    return id == null ? -1 : Longs.indexOf(ids(), id);
+  }
+
+  @Override
+  public int lastIndexOf(Object o) {
+    final Long id = idOf(o);
+    return id == null ? -1 : Longs.lastIndexOf(ids(), id);
+  }
+
+  /**
+   * @return true once the relatives ids were read
+   */
+  public boolean isInitialized() {
+    return ids != null;
+  }
+
+  private Long idOf(Object o) {
+    return klass.isInstance(o) ? EntityUtils.extractId(o) : null;
+  }
+
+  private long[] ids() {
+    if (ids == null) {
+      long[] read = new long[16];
+      int size = 0;
+      try (Transaction tx = source.beginTx()) {
+        final Node node = db.getNodeById(nodeId);
+        for (Relationship relationship : Buckets.relationships(node, type, direction)) {
+          final Node other = Buckets.otherNode(relationship, node);
+          if (EntityUtils.isDeleting(other)) {
+            continue;
+          }
+          if (size == read.length) {
+            read = Arrays.copyOf(read, size * 2);
+          }
+          read[size++] = other.getId();
+        }
+        tx.success();
+      }
+      ids = Arrays.copyOf(read, size);
+      relatives = new Object[size];
+    }
+    return ids;
+  }
+
+  private void load(int from) {
+    final int to = Math.min(ids.length, from + batchSize);
+    try (Transaction tx = source.beginTx()) {
+      for (int i = from; i < to; i++) {
+        if (relatives[i] == null) {
+          try {
+            final Node node = db.getNodeById(ids[i]);
+            if (!EntityUtils.isDeleting(node)) {
+              relatives[i] = Beanify.get(node, klass);
+            }
+          } catch (NotFoundException e) {
+            // Deleted since the ids were read
+          }
+        }
+      }
+      tx.success();
+    }
+  }
+}
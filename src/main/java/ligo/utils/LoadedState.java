@@ -0,0 +1,70 @@
+package ligo.utils;
+
+import com.google.common.collect.MapMaker;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers the node properties each entity instance was loaded with, so that updates only write
+ * what changed since. Only instances loaded for update, and the keys of projected ones, are
+ * tracked. Instances are weakly referenced and compared by identity, so tracking does not keep them
+ * alive nor depend on their equals.
+ */
+public class LoadedState {
+
+  private static final Map<Object, State> STATES = new MapMaker().weakKeys().makeMap();
+
+  //Ensure that no one instantiates this util class
+  private LoadedState() {
+  }
+
+  /**
+   * @param instance   Entity instance
+   * @param properties Immutable map of the properties the instance was loaded with
+   */
+  public static void track(Object instance, Map<String, Object> properties) {
+    STATES.put(instance, new State(properties, null));
+  }
+
+  /**
+   * Tracks an instance loaded with some of its properties only
+   *
+   * @param instance   Entity instance
+   * @param properties Immutable map of the properties the instance was loaded with, null if they
+   *                   were not kept
+   * @param keys       Keys that were read, whether the node had them or not
+   */
+  public static void track(Object instance, Map<String, Object> properties, Set<String> keys) {
+    STATES.put(instance, new State(properties, keys));
+  }
+
+  /**
+   * @param instance Entity instance
+   * @return Properties the instance was loaded with, null if they were not tracked
+   */
+  public static Map<String, Object> of(Object instance) {
+    final State state = STATES.get(instance);
+    return state == null ? null : state.properties;
+  }
+
+  /**
+   * @param instance Entity instance
+   * @return Keys the instance was loaded with, null if it was loaded with all of them or not
+   * tracked
+   */
+  public static Set<String> keysOf(Object instance) {
+    final State state = STATES.get(instance);
+    return state == null ? null : state.keys;
+  }
+
+  private static class State {
+    private final Map<String, Object> properties;
+    private final Set<String> keys;
+
+    private State(Map<String, Object> properties, Set<String> keys) {
+      this.properties = properties;
+      this.keys = keys;
+    }
+  }
+}
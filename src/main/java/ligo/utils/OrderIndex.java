@@ -0,0 +1,52 @@
+package ligo.utils;
+
+import ligo.meta.Ordered;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * Layout of the order indexes of @Ordered relationships. Each type and order key has its own
+ * Lucene relationship index, named "&lt;type&gt;_by_&lt;key&gt;". Every relationship is indexed by
+ * its order key and by its id as a tie break, and relationships ending in a bucket also by the
+ * owner of the bucket, as the end node of the index entry is the bucket. Shared by EntityRepo and
+ * the BulkImporter, so that both write entries the other reads.
+ */
+public class OrderIndex {
+
+  /**
+   * Separates the type from the order key in index names
+   */
+  public static final String INFIX = "_by_";
+  /**
+   * Key of the relationship id
+   */
+  public static final String TIE_BREAK = "_rid";
+  /**
+   * Key of the owner of the bucket the relationship ends in
+   */
+  public static final String OWNER = "_owner";
+
+  //Ensure that no one instantiates this util class
+  private OrderIndex() {
+  }
+
+  /**
+   * @return Name of the order index of the type
+   */
+  public static String nameOf(final RelationshipType type, final Ordered ordered) {
+    return type.name() + INFIX + ordered.key().toLowerCase();
+  }
+
+  /**
+   * @return true if the index is an order index of the type
+   */
+  public static boolean isOrderIndexOf(final String indexName, final RelationshipType type) {
+    return indexName.startsWith(type.name() + INFIX);
+  }
+
+  /**
+   * @return true if the index is an order index
+   */
+  public static boolean isOrderIndex(final String indexName) {
+    return indexName.contains(INFIX);
+  }
+}
@@ -1,7 +1,8 @@
 package me.roar.model.node;
 
-import com.google.gson.Gson;
 import ligo.meta.*;
+import ligo.utils.EntityUtils;
+import me.roar.model.relationship.Roars;
 
 import java.util.List;
 
@@ -16,6 +17,10 @@ public class Lion extends LigoEntity {
   @Property
   @Indexed(type = IndexType.EXACT)
   private int age;
+  @Property
+  @Indexed(type = IndexType.EXACT, unique = true)
+  private String handle;
+  @Relatives(Roars.class)
   private List<Roar> roars;
 
   public String getName() {
@@ -44,8 +49,28 @@ public class Lion extends LigoEntity {
     return this;
   }
 
+  public String getHandle() {
+    return handle;
+  }
+
+  public void setHandle(String handle) {
+    this.handle = handle;
+  }
+
+  public Lion withHandle(String handle) {
+    setHandle(handle);
+    return this;
+  }
+
+  /**
+   * @return Roars of the lion, read lazily. Null for a lion that was not loaded from the DB.
+   */
+  public List<Roar> getRoars() {
+    return roars;
+  }
+
   @Override
   public String toString() {
-    return new Gson().toJson(this);
+    return EntityUtils.toJson(this);
   }
 }
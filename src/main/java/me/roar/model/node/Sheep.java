@@ -21,6 +21,11 @@ public class Sheep extends LigoEntity {
     this.name = name;
   }
 
+  public Sheep withName(String name) {
+    setName(name);
+    return this;
+  }
+
   @Override
   public String toString() {
     return new Gson().toJson(this);
@@ -2,6 +2,7 @@ package me.roar.model.relationship;
 
 import ligo.meta.BaseRelationship;
 import ligo.meta.BasicRelationType;
+import ligo.meta.Ordered;
 import ligo.meta.RelationType;
 import me.roar.model.node.Lion;
 import me.roar.model.node.Sheep;
@@ -12,6 +13,7 @@ import java.util.Map;
 /**
  * Relationship representing a Sheep following a Lion
  */
+@Ordered(key = "cAt")
 public class Follows implements BaseRelationship<Sheep, Lion> {
   private static final BasicRelationType<Sheep, Lion> FOLLOWS =
       new BasicRelationType<>(Sheep.class, Lion.class, "follows");
@@ -2,6 +2,7 @@ package me.roar.model.relationship;
 
 import ligo.meta.BaseRelationship;
 import ligo.meta.BasicRelationType;
+import ligo.meta.Ordered;
 import ligo.meta.RelationType;
 import me.roar.model.node.Lion;
 import me.roar.model.node.Roar;
@@ -12,6 +13,7 @@ import java.util.Map;
 /**
  * Relationship of a lion with its roar
  */
+@Ordered(key = "cAt")
 public class Roars implements BaseRelationship<Lion, Roar> {
   private static final BasicRelationType<Lion, Roar> ROARS =
       new BasicRelationType<>(Lion.class, Roar.class, "roars");
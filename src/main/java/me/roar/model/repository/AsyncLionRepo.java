@@ -0,0 +1,155 @@
+package me.roar.model.repository;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import ligo.repository.AsyncRepo;
+import ligo.repository.GroupCommitter;
+import ligo.repository.RelativesPage;
+import ligo.repository.RepoExecutors;
+import me.roar.model.node.Lion;
+import me.roar.model.node.Roar;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Asynchronous ops for Lion, see {@link LionRepo}
+ */
+public class AsyncLionRepo extends AsyncRepo<LionRepo> {
+
+  public AsyncLionRepo(final LionRepo repo, final RepoExecutors executors) {
+    super(repo, executors);
+  }
+
+  /**
+   * @param committer Write-behind queue grouping the roars of many calls in one transaction
+   */
+  public AsyncLionRepo(final LionRepo repo, final RepoExecutors executors,
+                       final GroupCommitter committer) {
+    super(repo, executors, committer);
+  }
+
+  public ListenableFuture<Lion> create(final Lion lion) {
+    return write(new Callable<Lion>() {
+      @Override
+      public Lion call() {
+        return repo.create(lion);
+      }
+    });
+  }
+
+  public ListenableFuture<Lion> upsert(final Lion lion) {
+    return write(new Callable<Lion>() {
+      @Override
+      public Lion call() {
+        return repo.upsert(lion);
+      }
+    });
+  }
+
+  public ListenableFuture<Lion> update(final Lion lion) {
+    return write(new Callable<Lion>() {
+      @Override
+      public Lion call() {
+        return repo.update(lion);
+      }
+    });
+  }
+
+  public ListenableFuture<Lion> find(final Long id) {
+    return read(new Callable<Lion>() {
+      @Override
+      public Lion call() {
+        return repo.find(id);
+      }
+    });
+  }
+
+  public ListenableFuture<Set<Lion>> findByName(final String name) {
+    return read(new Callable<Set<Lion>>() {
+      @Override
+      public Set<Lion> call() {
+        return repo.findByName(name);
+      }
+    });
+  }
+
+  public ListenableFuture<Set<Lion>> searchByName(final String name) {
+    return read(new Callable<Set<Lion>>() {
+      @Override
+      public Set<Lion> call() {
+        return repo.searchByName(name);
+      }
+    });
+  }
+
+  public ListenableFuture<Set<Roar>> getRoars(final Lion lion) {
+    return read(new Callable<Set<Roar>>() {
+      @Override
+      public Set<Roar> call() {
+        return repo.getRoars(lion);
+      }
+    });
+  }
+
+  public ListenableFuture<RelativesPage<Roar>> getRoars(final Lion lion,
+                                                        final RelativesPage.Cursor after,
+                                                        final int limit) {
+    return read(new Callable<RelativesPage<Roar>>() {
+      @Override
+      public RelativesPage<Roar> call() {
+        return repo.getRoars(lion, after, limit);
+      }
+    });
+  }
+
+  /**
+   * Adds the roar through the write-behind queue, if any. Only the roar goes through the queue: it
+   * is pushed to the timelines of the followers on the write pool once its batch committed, so
+   * that the fan-out neither holds the locks of the whole batch nor runs again when it is retried.
+   *
+   * @return Future completed once the roar is on the timelines
+   */
+  public ListenableFuture<Void> addRoar(final Lion lion, final Roar roar) {
+    final ListenableFuture<List<Long>> added = writeBehind(new Callable<List<Long>>() {
+      @Override
+      public List<Long> call() {
+        return repo.addRoarWithoutFanOut(lion, roar);
+      }
+    });
+    return Futures.transform(added, new AsyncFunction<List<Long>, Void>() {
+      @Override
+      public ListenableFuture<Void> apply(final List<Long> ids) {
+        return write(new Callable<Void>() {
+          @Override
+          public Void call() {
+            repo.publish(lion, ids, Collections.singletonList(roar));
+            return null;
+          }
+        });
+      }
+    });
+  }
+
+  public ListenableFuture<List<Long>> addRoars(final Lion lion, final Iterable<Roar> roars) {
+    return write(new Callable<List<Long>>() {
+      @Override
+      public List<Long> call() {
+        return repo.addRoars(lion, roars);
+      }
+    });
+  }
+
+  public ListenableFuture<Void> deleteByName(final String name) {
+    return write(new Callable<Void>() {
+      @Override
+      public Void call() {
+        repo.deleteByName(name);
+        return null;
+      }
+    });
+  }
+}
@@ -0,0 +1,65 @@
+package me.roar.model.repository;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import ligo.repository.AsyncRepo;
+import ligo.repository.RepoExecutors;
+import me.roar.model.node.Roar;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Asynchronous ops for Roar, see {@link RoarRepo}
+ */
+public class AsyncRoarRepo extends AsyncRepo<RoarRepo> {
+
+  public AsyncRoarRepo(final RoarRepo repo, final RepoExecutors executors) {
+    super(repo, executors);
+  }
+
+  public ListenableFuture<Roar> create(final Roar roar) {
+    return write(new Callable<Roar>() {
+      @Override
+      public Roar call() {
+        return repo.create(roar);
+      }
+    });
+  }
+
+  public ListenableFuture<List<Long>> createAll(final Iterable<Roar> roars) {
+    return write(new Callable<List<Long>>() {
+      @Override
+      public List<Long> call() {
+        return repo.createAll(roars);
+      }
+    });
+  }
+
+  public ListenableFuture<Roar> update(final Roar roar) {
+    return write(new Callable<Roar>() {
+      @Override
+      public Roar call() {
+        return repo.update(roar);
+      }
+    });
+  }
+
+  public ListenableFuture<Roar> find(final Long id) {
+    return read(new Callable<Roar>() {
+      @Override
+      public Roar call() {
+        return repo.find(id);
+      }
+    });
+  }
+
+  public ListenableFuture<Set<Roar>> findByText(final String text) {
+    return read(new Callable<Set<Roar>>() {
+      @Override
+      public Set<Roar> call() {
+        return repo.findByText(text);
+      }
+    });
+  }
+}
@@ -0,0 +1,91 @@
+package me.roar.model.repository;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import ligo.repository.AsyncRepo;
+import ligo.repository.GroupCommitter;
+import ligo.repository.RepoExecutors;
+import me.roar.model.node.Lion;
+import me.roar.model.node.Roar;
+import me.roar.model.node.Sheep;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Asynchronous ops for Sheep, see {@link SheepRepo}
+ */
+public class AsyncSheepRepo extends AsyncRepo<SheepRepo> {
+
+  public AsyncSheepRepo(final SheepRepo repo, final RepoExecutors executors) {
+    super(repo, executors);
+  }
+
+  /**
+   * @param committer Write-behind queue grouping the bleats of many calls in one transaction
+   */
+  public AsyncSheepRepo(final SheepRepo repo, final RepoExecutors executors,
+                        final GroupCommitter committer) {
+    super(repo, executors, committer);
+  }
+
+  public ListenableFuture<Sheep> create(final Sheep sheep) {
+    return write(new Callable<Sheep>() {
+      @Override
+      public Sheep call() {
+        return repo.create(sheep);
+      }
+    });
+  }
+
+  /**
+   * Adds the bleat through the write-behind queue, if any
+   */
+  public ListenableFuture<Void> bleats(final Sheep sheepA, final String bleatText,
+                                       final Sheep sheepB) {
+    return writeBehind(new Callable<Void>() {
+      @Override
+      public Void call() {
+        repo.bleats(sheepA, bleatText, sheepB);
+        return null;
+      }
+    });
+  }
+
+  public ListenableFuture<Void> follows(final Sheep sheep, final Lion lion) {
+    return write(new Callable<Void>() {
+      @Override
+      public Void call() {
+        repo.follows(sheep, lion);
+        return null;
+      }
+    });
+  }
+
+  public ListenableFuture<List<Roar>> getHomeTimeline(final Sheep sheep, final int limit) {
+    return read(new Callable<List<Roar>>() {
+      @Override
+      public List<Roar> call() {
+        return repo.getHomeTimeline(sheep, limit);
+      }
+    });
+  }
+
+  public ListenableFuture<Sheep> find(final Long id) {
+    return read(new Callable<Sheep>() {
+      @Override
+      public Sheep call() {
+        return repo.find(id);
+      }
+    });
+  }
+
+  public ListenableFuture<Void> deleteByName(final String name) {
+    return write(new Callable<Void>() {
+      @Override
+      public Void call() {
+        repo.deleteByName(name);
+        return null;
+      }
+    });
+  }
+}
@@ -1,11 +1,22 @@
 package me.roar.model.repository;
 
+import com.google.common.collect.Lists;
+import ligo.config.DBConfig;
+import ligo.repository.EntityCursor;
 import ligo.repository.EntityRepo;
+import ligo.repository.Projection;
+import ligo.repository.RelativesPage;
 import me.roar.model.node.Lion;
 import me.roar.model.node.Roar;
+import me.roar.model.relationship.Follows;
 import me.roar.model.relationship.Roars;
+import org.neo4j.graphdb.Direction;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -15,8 +26,23 @@ public class LionRepo extends EntityRepo {
 
   private static final String NAME = "name";
 
+  private final TimelineRepo timelineRepo;
+
   public LionRepo() {
+    this(new TimelineRepo());
+  }
+
+  public LionRepo(TimelineRepo timelineRepo) {
     super();
+    this.timelineRepo = timelineRepo;
+  }
+
+  /**
+   * Repo of the lions of the given DB, e.g. of one shard
+   */
+  public LionRepo(DBConfig dbConfig) {
+    super(dbConfig);
+    this.timelineRepo = new TimelineRepo(dbConfig);
   }
 
   /**
@@ -30,18 +56,62 @@ public class LionRepo extends EntityRepo {
     return save(lion);
   }
 
+  /**
+   * Finds the lion with the same handle, or creates it
+   *
+   * @param lion Lion instance with a handle
+   * @return Lion saved to the DB
+   */
+  public Lion upsert(Lion lion) {
+    if (lion.getcAt() == 0) {
+      lion.setCreatedAt(new Date());
+    }
+    return super.upsert(lion);
+  }
+
+  /**
+   * Writes the changes made to a loaded lion, see {@link #update(Object)}
+   *
+   * @param lion Lion loaded from the DB, preferably by {@link #findForUpdate(Long)}
+   * @return Updated lion
+   */
+  public Lion update(Lion lion) {
+    return super.update(lion);
+  }
+
   public Set<Lion> findByName(final String name) {
     return find(NAME, name, Lion.class);
   }
 
+  /**
+   * @param name       Name
+   * @param projection Projection of the lions, e.g. on a list view DTO
+   * @return Lions with the given name, reading only the projected properties
+   */
+  public <P> Set<P> findByName(final String name, final Projection<P> projection) {
+    return find(NAME, name, Lion.class, projection);
+  }
+
   public Set<Lion> searchByName(final String name) {
     return search("lion_name_ft", NAME, name, Lion.class);
   }
 
+  public EntityCursor<Lion> searchByName(final String name, final int skip, final int limit) {
+    return searchCursor("lion_name_ft", NAME, name, Lion.class, skip, limit);
+  }
+
   public Lion find(final Long id) {
     return find(id, Lion.class);
   }
 
+  /**
+   * @param id Id of the lion
+   * @return Lion to be passed to {@link #update(Lion)}, see {@link #findForUpdate(Long, Class)}
+   */
+  public Lion findForUpdate(final Long id) {
+    return findForUpdate(id, Lion.class);
+  }
+
   public void deleteByName(final String name) {
     delete(Lion.class, NAME, name);
   }
@@ -54,8 +124,105 @@ public class LionRepo extends EntityRepo {
     return getRelatives(lion, Roars.newInstance());
   }
 
+  /**
+   * @param lion       Lion
+   * @param projection Projection of the roars, e.g. without their text
+   * @return Roars of the lion, reading only the projected properties
+   */
+  public <P> Set<P> getRoars(final Lion lion, final Projection<P> projection) {
+    return getRelatives(lion, Roars.newInstance(), projection);
+  }
+
+  public long countRoars(final Lion lion) {
+    return countRelatives(lion, Roars.newInstance());
+  }
+
+  public long countFollowers(final Lion lion) {
+    return countRelationships(lion.getId(), Follows.newInstance().getRelationType(),
+        Direction.INCOMING);
+  }
+
+  /**
+   * Latest roars of each of the lions, read in one transaction
+   *
+   * @param lions        Lions
+   * @param limitPerLion Maximum number of roars per lion
+   * @return Roars of each lion, newest first
+   */
+  public Map<Lion, List<Roar>> getRoars(final Collection<Lion> lions, final int limitPerLion) {
+    return getRelativesBatch(lions, Roars.newInstance(), limitPerLion);
+  }
+
+  /**
+   * Latest roars of the lion, newest first
+   *
+   * @param lion  Lion
+   * @param after Cursor of the previous page, null for the latest roars
+   * @param limit Page size
+   * @return Page of roars
+   */
+  public RelativesPage<Roar> getRoars(final Lion lion, final RelativesPage.Cursor after,
+                                      final int limit) {
+    return getRelativesPage(lion, Roars.newInstance(), after, limit);
+  }
+
+  /**
+   * Adds roars to the lion and pushes them to the timelines of its followers. New roars get the
+   * current time as uAt.
+   *
+   * @param lion  Lion
+   * @param roars Roars, new or existing
+   */
   public void addRoar(final Lion lion, Roar... roars) {
-    addRelatives(lion, Roars.newInstance(), roars);
+    publish(lion, addRoarWithoutFanOut(lion, roars), Arrays.asList(roars));
+  }
+
+  /**
+   * Adds roars to the lion without pushing them to the timelines of its followers, e.g. as part of
+   * a larger transaction. Call {@link #publish} once that transaction committed.
+   *
+   * @param lion  Lion
+   * @param roars Roars, new or existing
+   * @return Ids of the roars, in the given order
+   */
+  public List<Long> addRoarWithoutFanOut(final Lion lion, Roar... roars) {
+    stampNew(Arrays.asList(roars));
+    return addRelatives(lion, Roars.newInstance(), roars);
+  }
+
+  public List<Long> addRoars(final Lion lion, final Iterable<Roar> roars) {
+    final List<Roar> roarList = Lists.newArrayList(roars);
+    stampNew(roarList);
+    final List<Long> ids = addRelativesBatch(lion, Roars.newInstance(), roarList);
+    publish(lion, ids, roarList);
+    return ids;
+  }
+
+  private static void stampNew(final List<Roar> roars) {
+    final Date now = new Date();
+    for (Roar roar : roars) {
+      if (roar.getId() == null && roar.getuAt() == 0) {
+        roar.setUpdatedAt(now);
+      }
+    }
+  }
+
+  /**
+   * Pushes roars added to the lion to the timelines of its followers, in chunked transactions of
+   * their own, see {@link TimelineRepo#publish}
+   *
+   * @param lion  Lion
+   * @param ids   Ids of the roars
+   * @param roars Roars, in the same order
+   */
+  public void publish(final Lion lion, final List<Long> ids, final List<Roar> roars) {
+    final long[] roarIds = new long[ids.size()];
+    final long[] roarAts = new long[ids.size()];
+    for (int i = 0; i < roarIds.length; i++) {
+      roarIds[i] = ids.get(i);
+      roarAts[i] = roars.get(i).getuAt();
+    }
+    timelineRepo.publish(lion, roarIds, roarAts);
   }
 
 }
@@ -1,10 +1,15 @@
 package me.roar.model.repository;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
 import ligo.exceptions.IllegalLabelExtractionAttemptException;
+import ligo.config.DBConfig;
+import ligo.repository.EntityCursor;
 import ligo.repository.EntityRepo;
 import me.roar.model.node.Roar;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -18,6 +23,10 @@ public class RoarRepo extends EntityRepo {
     super();
   }
 
+  public RoarRepo(DBConfig dbConfig) {
+    super(dbConfig);
+  }
+
   /**
    * Create unique node labeled Roar in the DB
    *
@@ -29,14 +38,53 @@ public class RoarRepo extends EntityRepo {
     return save(roar);
   }
 
+  /**
+   * Create Roar nodes in batches, see {@link #saveAll(Iterable)}
+   *
+   * @param roars Roar instances
+   * @return Ids of the saved roars, in the given order
+   */
+  public List<Long> createAll(final Iterable<Roar> roars) {
+    final Date now = new Date();
+    return saveAll(Iterables.transform(roars, new Function<Roar, Roar>() {
+      @Override
+      public Roar apply(Roar roar) {
+        roar.setUpdatedAt(now);
+        return roar;
+      }
+    }));
+  }
+
+  /**
+   * Writes the changes made to a loaded roar, see {@link #update(Object)}
+   *
+   * @param roar Roar loaded from the DB, preferably by {@link #findForUpdate(Long)}
+   * @return Updated roar
+   */
+  public Roar update(Roar roar) {
+    return super.update(roar);
+  }
+
   public Set<Roar> findByText(final String text) throws IllegalLabelExtractionAttemptException {
     return find(TEXT, text, Roar.class);
   }
 
+  public EntityCursor<Roar> searchByText(final String text, final int skip, final int limit) {
+    return searchCursor("roar_text_ft", TEXT, text, Roar.class, skip, limit);
+  }
+
   public Roar find(final Long id) {
     return find(id, Roar.class);
   }
 
+  /**
+   * @param id Id of the roar
+   * @return Roar to be passed to {@link #update(Roar)}, see {@link #findForUpdate(Long, Class)}
+   */
+  public Roar findForUpdate(final Long id) {
+    return findForUpdate(id, Roar.class);
+  }
+
   public void delete(final long id) {
     delete(Roar.class, id);
   }
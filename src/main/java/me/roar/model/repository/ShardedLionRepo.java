@@ -0,0 +1,86 @@
+package me.roar.model.repository;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import ligo.config.DBConfig;
+import ligo.repository.RepoExecutors;
+import ligo.repository.ShardKey;
+import ligo.repository.ShardedRepo;
+import me.roar.model.node.Lion;
+import me.roar.model.node.Roar;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lions spread over several DBs by the hash of their handle, which is unique and should not change
+ * once the lion is created. A lion and its roars live in the same shard. Lion ids are only unique
+ * within a shard, so ops on a lion go to the shard of its handle. Lookups by name go to all shards.
+ */
+public class ShardedLionRepo extends ShardedRepo<LionRepo> {
+
+  public ShardedLionRepo(final List<DBConfig> dbConfigs, final RepoExecutors executors) {
+    super(Lists.transform(dbConfigs, new Function<DBConfig, LionRepo>() {
+      @Override
+      public LionRepo apply(DBConfig dbConfig) {
+        return new LionRepo(dbConfig);
+      }
+    }), ShardKey.HASH, executors);
+  }
+
+  /**
+   * @param lion Lion with a handle
+   * @return Lion created in the shard of its handle
+   */
+  public Lion create(final Lion lion) {
+    return shardOf(lion).create(lion);
+  }
+
+  /**
+   * Lions with the given name in all the shards
+   */
+  public ListenableFuture<List<Lion>> findByName(final String name) {
+    return scatterGather(new Function<LionRepo, Set<Lion>>() {
+      @Override
+      public Set<Lion> apply(LionRepo shard) {
+        return shard.findByName(name);
+      }
+    });
+  }
+
+  public void addRoar(final Lion lion, final Roar... roars) {
+    shardOf(lion).addRoar(lion, roars);
+  }
+
+  public Set<Roar> getRoars(final Lion lion) {
+    return shardOf(lion).getRoars(lion);
+  }
+
+  public void deleteByName(final String name) {
+    for (LionRepo shard : getShards()) {
+      shard.deleteByName(name);
+    }
+  }
+
+  /**
+   * @return Repo of the shard of the lion's handle
+   */
+  public LionRepo shardOf(final Lion lion) {
+    Preconditions.checkArgument(lion.getHandle() != null, "Sharded lions need a handle");
+    return shardFor(lion.getHandle());
+  }
+
+  /**
+   * Full text search of the lions of all the shards
+   */
+  public ListenableFuture<List<Lion>> searchByName(final String name) {
+    return scatterGather(new Function<LionRepo, Set<Lion>>() {
+      @Override
+      public Set<Lion> apply(LionRepo shard) {
+        return shard.searchByName(name);
+      }
+    });
+  }
+}
@@ -2,18 +2,39 @@ package me.roar.model.repository;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
+import ligo.config.DBConfig;
 import ligo.repository.EntityRepo;
 import me.roar.model.node.Lion;
+import me.roar.model.node.Roar;
 import me.roar.model.node.Sheep;
 import me.roar.model.relationship.Bleats;
 import me.roar.model.relationship.Follows;
 import org.neo4j.graphdb.Direction;
 
 import java.util.Date;
+import java.util.List;
 
 public class SheepRepo extends EntityRepo {
+
+  private static final String NAME = "name";
+
+  private final TimelineRepo timelineRepo;
+
   public SheepRepo() {
+    this(new TimelineRepo());
+  }
+
+  public SheepRepo(TimelineRepo timelineRepo) {
     super();
+    this.timelineRepo = timelineRepo;
+  }
+
+  /**
+   * Repo of the sheep of the given DB, e.g. of one shard
+   */
+  public SheepRepo(DBConfig dbConfig) {
+    super(dbConfig);
+    this.timelineRepo = new TimelineRepo(dbConfig);
   }
 
   public Sheep create(Sheep sheep) {
@@ -35,5 +56,25 @@ public class SheepRepo extends EntityRepo {
     addRelatives(sheep,
         new Follows(ImmutableMap.of("cAt", new Date().getTime()), Direction.OUTGOING),
         lion);
+    timelineRepo.backfill(sheep, lion);
+  }
+
+  /**
+   * Latest roars of the lions followed by the sheep
+   *
+   * @param sheep Sheep
+   * @param limit Page size
+   * @return Roars, newest first
+   */
+  public List<Roar> getHomeTimeline(Sheep sheep, int limit) {
+    return timelineRepo.getHomeTimeline(sheep, limit);
+  }
+
+  public Sheep find(final Long id) {
+    return find(id, Sheep.class);
+  }
+
+  public void deleteByName(final String name) {
+    delete(Sheep.class, NAME, name);
   }
 }
@@ -0,0 +1,395 @@
+package me.roar.model.repository;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+import ligo.config.DBConfig;
+import ligo.repository.EntityRepo;
+import ligo.repository.RelativesPage;
+import ligo.utils.Beanify;
+import ligo.utils.Buckets;
+import ligo.utils.EntityMeta;
+import ligo.utils.EntityUtils;
+import me.roar.model.node.Lion;
+import me.roar.model.node.Roar;
+import me.roar.model.node.Sheep;
+import me.roar.model.relationship.Follows;
+import me.roar.model.relationship.Roars;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Home timelines of sheep. Roars of regular lions are pushed to the timeline of every follower
+ * when they are added (fan-out on write), into a bounded list of (roar id, uAt) kept on the sheep
+ * node. Pushed roars go to a short head list first, merged into the full list once it fills up, so
+ * that a roar does not rewrite the whole timeline of every follower. Roars older than the tail of
+ * a full timeline are not written at all. Lions with more followers than the fan-out limit are
+ * marked as such, and their roars are merged into the timeline when it is read (fan-out on read),
+ * from the ordered roars index.
+ */
+public class TimelineRepo extends EntityRepo {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TimelineRepo.class);
+
+  private static final String TIMELINE = "_tl";
+  private static final String TIMELINE_AT = "_tlat";
+  private static final String TIMELINE_TAIL = "_tltail";
+  private static final String HEAD = "_tlhead";
+  private static final String HEAD_AT = "_tlheadat";
+  private static final int HEAD_SIZE = 32;
+  private static final String FANOUT_ON_READ_LIONS = "_tlread";
+  private static final String FANOUT_ON_READ = "_fanoutread";
+  private static final int DEFAULT_TIMELINE_SIZE = 800;
+  private static final int DEFAULT_FANOUT_LIMIT = 10000;
+  private static final Label ROAR_LABEL = EntityMeta.of(Roar.class).getLabel();
+
+  private static final Comparator<long[]> NEWEST_FIRST = new Comparator<long[]>() {
+    @Override
+    public int compare(long[] a, long[] b) {
+      final int byAt = Longs.compare(b[1], a[1]);
+      return byAt != 0 ? byAt : Longs.compare(b[0], a[0]);
+    }
+  };
+
+  private int timelineSize = DEFAULT_TIMELINE_SIZE;
+  private int fanOutLimit = DEFAULT_FANOUT_LIMIT;
+
+  public TimelineRepo() {
+    super();
+  }
+
+  public TimelineRepo(DBConfig dbConfig) {
+    super(dbConfig);
+  }
+
+  /**
+   * Pushes new roars of the lion to the timelines of its followers. Followers are written in
+   * chunks of {@link #getBatchSize()} per transaction. If the lion has more followers than the
+   * fan-out limit, it switches to fan-out on read instead.
+   *
+   * @param lion    Lion that roared
+   * @param roarIds Ids of the new roars
+   * @param roarAts uAt of the new roars, in the same order
+   */
+  public void publish(final Lion lion, final long[] roarIds, final long[] roarAts) {
+    if (roarIds.length == 0) {
+      return;
+    }
+    final long[] followers;
+    try (Transaction tx = beginTx()) {
+      final Node lionNode = db.getNodeById(lion.getId());
+      if ((Boolean) lionNode.getProperty(FANOUT_ON_READ, false)) {
+        tx.success();
+        return;
+      }
+      followers = followersOf(lionNode, fanOutLimit + 1);
+      tx.success();
+    }
+
+    if (followers.length > fanOutLimit) {
+      switchToFanOutOnRead(lion);
+      return;
+    }
+    push(followers, roarIds, roarAts);
+  }
+
+  /**
+   * Brings the latest roars of a newly followed lion into the sheep's timeline
+   *
+   * @param sheep Follower
+   * @param lion  Followed lion
+   */
+  public void backfill(final Sheep sheep, final Lion lion) {
+    try (Transaction tx = beginTx()) {
+      final Node sheepNode = db.getNodeById(sheep.getId());
+      final Node lionNode = db.getNodeById(lion.getId());
+      tx.acquireWriteLock(sheepNode);
+      if ((Boolean) lionNode.getProperty(FANOUT_ON_READ, false)) {
+        final long[] lions = (long[]) sheepNode.getProperty(FANOUT_ON_READ_LIONS, new long[0]);
+        if (!Longs.contains(lions, lion.getId())) {
+          sheepNode.setProperty(FANOUT_ON_READ_LIONS, Longs.concat(lions, new long[]{lion.getId()}));
+        }
+      } else {
+        final List<long[]> entries = Lists.newArrayList();
+        for (Roar roar : getRelativesPage(lion, Roars.newInstance(), null, timelineSize)
+            .getRelatives()) {
+          entries.add(new long[]{roar.getId(), roar.getuAt()});
+        }
+        prepend(sheepNode, entries);
+      }
+      tx.success();
+    }
+  }
+
+  /**
+   * Latest roars of the lions the sheep follows, newest first. Costs the page size plus one page
+   * per followed fan-out-on-read lion, whatever the number of followed lions.
+   *
+   * @param sheep Sheep
+   * @param limit Page size
+   * @return Roars
+   */
+  public List<Roar> getHomeTimeline(final Sheep sheep, final int limit) {
+    try (Transaction tx = beginTx()) {
+      final Node sheepNode = db.getNodeById(sheep.getId());
+      final List<long[]> entries = entriesOf(sheepNode, limit);
+
+      final List<Roar> fanOutOnRead = Lists.newArrayList();
+      for (long lionId : (long[]) sheepNode.getProperty(FANOUT_ON_READ_LIONS, new long[0])) {
+        try {
+          final Node lionNode = db.getNodeById(lionId);
+          if (EntityUtils.isDeleting(lionNode)) {
+            continue;
+          }
+          final Lion lion = Beanify.get(lionNode, Lion.class);
+          final RelativesPage<Roar> page =
+              getRelativesPage(lion, Roars.newInstance(), null, limit);
+          for (Roar roar : page.getRelatives()) {
+            entries.add(new long[]{roar.getId(), roar.getuAt()});
+            fanOutOnRead.add(roar);
+          }
+        } catch (NotFoundException e) {
+          LOG.debug("Followed lion {} is gone", lionId);
+        }
+      }
+      Collections.sort(entries, NEWEST_FIRST);
+
+      final List<Roar> timeline = Lists.newArrayListWithCapacity(limit);
+      final Set<Long> seen = Sets.newHashSet();
+      for (long[] entry : entries) {
+        if (timeline.size() == limit) {
+          break;
+        }
+        if (!seen.add(entry[0])) {
+          continue;
+        }
+        Roar roar = findLoaded(fanOutOnRead, entry[0]);
+        if (roar == null) {
+          try {
+            final Node roarNode = db.getNodeById(entry[0]);
+            // Ids of deleted roars get reused by other nodes
+            if (!roarNode.hasLabel(ROAR_LABEL) || EntityUtils.isDeleting(roarNode)) {
+              continue;
+            }
+            roar = Beanify.get(roarNode, Roar.class);
+          } catch (NotFoundException e) {
+            LOG.debug("Roar {} is gone", entry[0]);
+            continue;
+          }
+        }
+        timeline.add(roar);
+      }
+      tx.success();
+      return timeline;
+    }
+  }
+
+  /**
+   * Marks the lion as fan-out on read, and records it on every follower so that reads do not have
+   * to look at all followed lions. Done once per lion.
+   */
+  private void switchToFanOutOnRead(final Lion lion) {
+    final long[] followers;
+    try (Transaction tx = beginTx()) {
+      final Node lionNode = db.getNodeById(lion.getId());
+      tx.acquireWriteLock(lionNode);
+      if ((Boolean) lionNode.getProperty(FANOUT_ON_READ, false)) {
+        tx.success();
+        return;
+      }
+      lionNode.setProperty(FANOUT_ON_READ, true);
+      followers = followersOf(lionNode, Integer.MAX_VALUE);
+      tx.success();
+    }
+    LOG.info("Lion {} has more than {} followers, switching to fan-out on read", lion.getId(),
+        fanOutLimit);
+
+    for (int from = 0; from < followers.length; from += getBatchSize()) {
+      final long[] chunk =
+          Arrays.copyOfRange(followers, from, Math.min(followers.length, from + getBatchSize()));
+      try (Transaction tx = beginTx()) {
+        for (long follower : chunk) {
+          final Node sheepNode = db.getNodeById(follower);
+          tx.acquireWriteLock(sheepNode);
+          final long[] lions = (long[]) sheepNode.getProperty(FANOUT_ON_READ_LIONS, new long[0]);
+          if (!Longs.contains(lions, lion.getId())) {
+            sheepNode.setProperty(FANOUT_ON_READ_LIONS, Longs.concat(lions, new long[]{lion.getId()}));
+          }
+        }
+        tx.success();
+      }
+    }
+  }
+
+  private void push(final long[] followers, final long[] roarIds, final long[] roarAts) {
+    final List<long[]> entries = Lists.newArrayListWithCapacity(roarIds.length);
+    for (int i = 0; i < roarIds.length; i++) {
+      entries.add(new long[]{roarIds[i], roarAts[i]});
+    }
+
+    for (int from = 0; from < followers.length; from += getBatchSize()) {
+      final long[] chunk =
+          Arrays.copyOfRange(followers, from, Math.min(followers.length, from + getBatchSize()));
+      // Locks are always taken in id order, so concurrent fan-outs cannot deadlock
+      Arrays.sort(chunk);
+      try (Transaction tx = beginTx()) {
+        for (long follower : chunk) {
+          final Node sheepNode = db.getNodeById(follower);
+          tx.acquireWriteLock(sheepNode);
+          prepend(sheepNode, entries);
+        }
+        tx.success();
+      }
+    }
+  }
+
+  /**
+   * Adds the entries to the head of the timeline of the sheep, skipping the ones older than the
+   * tail of a full timeline. Once the head holds more than {@link #HEAD_SIZE} entries, it is merged
+   * into the timeline, keeping it sorted and bounded. The caller holds the write lock of the sheep
+   * node.
+   */
+  private void prepend(final Node sheepNode, final List<long[]> newEntries) {
+    final long tail = (Long) sheepNode.getProperty(TIMELINE_TAIL, Long.MIN_VALUE);
+    final List<long[]> head = entriesOf(sheepNode, HEAD, HEAD_AT, Integer.MAX_VALUE);
+    final int headSize = head.size();
+    for (long[] entry : newEntries) {
+      if (entry[1] >= tail) {
+        head.add(entry);
+      }
+    }
+    if (head.size() == headSize) {
+      return;
+    }
+
+    if (head.size() <= HEAD_SIZE) {
+      write(sheepNode, HEAD, HEAD_AT, head, HEAD_SIZE);
+      return;
+    }
+    final List<long[]> entries = entriesOf(sheepNode, TIMELINE, TIMELINE_AT, timelineSize);
+    entries.addAll(head);
+    final long[] ats = write(sheepNode, TIMELINE, TIMELINE_AT, entries, timelineSize);
+    sheepNode.removeProperty(HEAD);
+    sheepNode.removeProperty(HEAD_AT);
+    if (ats.length == timelineSize) {
+      sheepNode.setProperty(TIMELINE_TAIL, ats[ats.length - 1]);
+    }
+  }
+
+  /**
+   * Writes the entries newest first, without duplicates, bounded to limit
+   *
+   * @return uAt of the written entries
+   */
+  private static long[] write(final Node sheepNode, final String idsKey, final String atsKey,
+                              final List<long[]> entries, final int limit) {
+    Collections.sort(entries, NEWEST_FIRST);
+    final long[] ids = new long[Math.min(entries.size(), limit)];
+    final long[] ats = new long[ids.length];
+    final Set<Long> seen = Sets.newHashSet();
+    int size = 0;
+    for (long[] entry : entries) {
+      if (size == ids.length) {
+        break;
+      }
+      if (seen.add(entry[0])) {
+        ids[size] = entry[0];
+        ats[size] = entry[1];
+        size++;
+      }
+    }
+    sheepNode.setProperty(idsKey, Arrays.copyOf(ids, size));
+    sheepNode.setProperty(atsKey, Arrays.copyOf(ats, size));
+    return Arrays.copyOf(ats, size);
+  }
+
+  /**
+   * @return Entries of the head and at most limit entries of the timeline, unsorted
+   */
+  private static List<long[]> entriesOf(final Node sheepNode, final int limit) {
+    final List<long[]> entries = entriesOf(sheepNode, HEAD, HEAD_AT, Integer.MAX_VALUE);
+    entries.addAll(entriesOf(sheepNode, TIMELINE, TIMELINE_AT, limit));
+    return entries;
+  }
+
+  private static List<long[]> entriesOf(final Node sheepNode, final String idsKey,
+                                        final String atsKey, final int limit) {
+    final long[] ids = (long[]) sheepNode.getProperty(idsKey, new long[0]);
+    final long[] ats = (long[]) sheepNode.getProperty(atsKey, new long[0]);
+    final int size = Math.min(limit, Math.min(ids.length, ats.length));
+    final List<long[]> entries = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < size; i++) {
+      entries.add(new long[]{ids[i], ats[i]});
+    }
+    return entries;
+  }
+
+  private static long[] followersOf(final Node lionNode, final int max) {
+    long[] followers = new long[16];
+    int size = 0;
+    for (Relationship follows : Buckets.relationships(lionNode,
+        Follows.newInstance().getRelationType(), Direction.INCOMING)) {
+      if (size == max) {
+        break;
+      }
+      if (EntityUtils.isDeleting(follows.getStartNode())) {
+        continue;
+      }
+      if (size == followers.length) {
+        followers = Arrays.copyOf(followers, size * 2);
+      }
+      followers[size++] = follows.getStartNode().getId();
+    }
+    return Arrays.copyOf(followers, size);
+  }
+
+  private static Roar findLoaded(final List<Roar> roars, final long id) {
+    for (Roar roar : roars) {
+      if (roar.getId() == id) {
+        return roar;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return Maximum number of roars kept on a sheep's timeline, besides the at most 32 pushed since
+   * its head was last merged
+   */
+  public int getTimelineSize() {
+    return timelineSize;
+  }
+
+  public void setTimelineSize(int timelineSize) {
+    if (timelineSize <= 0) {
+      throw new IllegalArgumentException("timelineSize should be positive");
+    }
+    this.timelineSize = timelineSize;
+  }
+
+  /**
+   * @return Number of followers above which a lion's roars are merged on read instead of pushed
+   */
+  public int getFanOutLimit() {
+    return fanOutLimit;
+  }
+
+  public void setFanOutLimit(int fanOutLimit) {
+    if (fanOutLimit < 0) {
+      throw new IllegalArgumentException("fanOutLimit should not be negative");
+    }
+    this.fanOutLimit = fanOutLimit;
+  }
+}
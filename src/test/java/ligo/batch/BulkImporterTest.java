@@ -0,0 +1,181 @@
+package ligo.batch;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import ligo.config.DBConfig;
+import ligo.meta.BaseRelationship;
+import ligo.meta.BasicRelationType;
+import ligo.meta.RelationType;
+import ligo.repository.RelativesPage;
+import me.roar.model.node.Lion;
+import me.roar.model.node.Roar;
+import me.roar.model.node.Sheep;
+import me.roar.model.relationship.Follows;
+import me.roar.model.relationship.Roars;
+import me.roar.model.repository.LionRepo;
+import me.roar.model.repository.SheepRepoIntegrationTest.WatchedBy;
+import me.roar.model.repository.SheepRepoIntegrationTest.Watches;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests BulkImporter, reading the imported store back through the repos
+ */
+public class BulkImporterTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() {
+    dir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteRecursively(dir);
+  }
+
+  @Test
+  public void testJsonlRoundTrip() throws IOException {
+    final File lions = write("lions.jsonl",
+        "{\"id\": \"l1\", \"name\": \"Leo\", \"age\": 7, \"handle\": \"@leo\"}",
+        "{\"id\": \"l2\", \"name\": \"Nala\", \"age\": \"old\"}",
+        "{\"id\": \"l3\", \"name\": \"Kiara\", \"age\": 2}",
+        "{not json");
+    final File sheep = write("sheep.jsonl",
+        "{\"id\": \"s1\", \"name\": \"Dolly\"}",
+        "{\"id\": \"s2\", \"name\": \"Shaun\"}");
+    final File follows = write("follows.jsonl",
+        "{\"start\": \"s1\", \"end\": \"l1\", \"cAt\": 1000}",
+        "{\"start\": \"s2\", \"end\": \"l1\", \"cAt\": 2000}",
+        "{\"start\": \"s1\", \"end\": \"l2\", \"cAt\": 3000}",
+        "{\"start\": \"s9\", \"end\": \"l3\", \"cAt\": 4000}");
+    final File watches = write("watches.jsonl",
+        "{\"start\": \"s1\", \"end\": \"l1\", \"cAt\": 1000}",
+        "{\"start\": \"s2\", \"end\": \"l1\", \"cAt\": 2000}",
+        "{\"start\": \"s2\", \"end\": \"l3\", \"cAt\": \"soon\"}");
+
+    try (BulkImporter importer = new BulkImporter(dir.getPath(), 2)) {
+      assertEquals(2, importer.importNodes(Lion.class, lions));
+      assertEquals(2, importer.importNodes(Sheep.class, sheep));
+      assertEquals(2, importer.importRelationships(Follows.newInstance(), follows));
+      assertEquals(2, importer.importRelationships(new Watches(), watches));
+      assertEquals("expecting the unparsable line, the malformed age and order key, and the unknown "
+          + "nodes", 5, importer.getSkippedCount());
+    }
+
+    final DBConfig dbConfig = new DBConfig(dir.getPath());
+    try {
+      final LionRepo lionRepo = new LionRepo(dbConfig);
+      final Lion leo = Iterables.getOnlyElement(lionRepo.findByName("Leo"));
+      assertEquals(7, leo.getAge());
+      assertEquals("@leo", leo.getHandle());
+      assertNull("expecting the malformed record to be skipped", lionRepo.findByName("Nala"));
+      assertEquals(1, lionRepo.searchByName("kiara").size());
+
+      final Set<String> followers = Sets.newHashSet();
+      for (Sheep follower : lionRepo.getRelatives(leo, new FollowedBy())) {
+        followers.add(follower.getName());
+      }
+      assertEquals(Sets.newHashSet("Dolly", "Shaun"), followers);
+
+      final RelativesPage<Sheep> page = lionRepo.getRelativesPage(leo, new WatchedBy(), null, 1);
+      assertEquals("expecting the newest first", "Shaun", page.getRelatives().get(0).getName());
+      assertEquals("Dolly", lionRepo.getRelativesPage(leo, new WatchedBy(), page.getNext(), 1)
+          .getRelatives().get(0).getName());
+      assertEquals(2, lionRepo.countRelatives(leo, new WatchedBy()));
+    } finally {
+      dbConfig.shutdown();
+    }
+  }
+
+  @Test
+  public void testCsvRoundTrip() throws IOException {
+    final File lions = write("lions.csv",
+        "id,name,age",
+        "l1,\"Leo, the first\",7",
+        "l2,Nala,seven");
+    final File roars = write("roars.csv",
+        "id,text,isDirect,uAt",
+        "r1,\"Hello, \"\"world\"\"\",true,1000",
+        "r2,Bye,maybe,2000",
+        "r3,Again,false,3000");
+    final File lionRoars = write("lion_roars.csv",
+        "start,end,cAt",
+        "l1,r1,1000",
+        "l1,r2,2000",
+        "l1,r3,3000",
+        "l9,r1,4000");
+
+    try (BulkImporter importer = new BulkImporter(dir.getPath(), 1)) {
+      assertEquals(1, importer.importNodes(Lion.class, lions));
+      assertEquals(2, importer.importNodes(Roar.class, roars));
+      assertEquals(2, importer.importRelationships(Roars.newInstance(), lionRoars));
+      assertEquals("expecting the malformed age and boolean, and the unknown nodes", 4,
+          importer.getSkippedCount());
+    }
+
+    final DBConfig dbConfig = new DBConfig(dir.getPath());
+    try {
+      final LionRepo lionRepo = new LionRepo(dbConfig);
+      final Lion leo = Iterables.getOnlyElement(lionRepo.findByName("Leo, the first"));
+      assertEquals(7, leo.getAge());
+      assertNull("expecting the malformed record to be skipped", lionRepo.findByName("Nala"));
+
+      final Map<String, Roar> byText = Maps.newHashMap();
+      for (Roar roar : lionRepo.getRoars(leo)) {
+        byText.put(roar.getText(), roar);
+      }
+      assertEquals(Sets.newHashSet("Hello, \"world\"", "Again"), byText.keySet());
+      assertTrue(byText.get("Hello, \"world\"").isDirect());
+      assertEquals(3000, byText.get("Again").getuAt());
+
+      final RelativesPage<Roar> page = lionRepo.getRoars(leo, null, 1);
+      assertEquals("expecting the newest first", "Again", page.getRelatives().get(0).getText());
+      assertEquals("Hello, \"world\"",
+          lionRepo.getRoars(leo, page.getNext(), 1).getRelatives().get(0).getText());
+    } finally {
+      dbConfig.shutdown();
+    }
+  }
+
+  private File write(final String name, final String... lines) throws IOException {
+    final File file = new File(dir, name);
+    Files.write(Joiner.on('\n').join(lines), file, Charsets.UTF_8);
+    return file;
+  }
+
+  public static class FollowedBy implements BaseRelationship<Lion, Sheep> {
+    private static final BasicRelationType<Lion, Sheep> FOLLOWED_BY =
+        new BasicRelationType<>(Lion.class, Sheep.class, "follows");
+
+    @Override
+    public RelationType<Lion, Sheep> getRelationType() {
+      return FOLLOWED_BY;
+    }
+
+    @Override
+    public Map<String, ?> getProperties() {
+      return null;
+    }
+
+    @Override
+    public Direction getDirection() {
+      return Direction.INCOMING;
+    }
+  }
+}
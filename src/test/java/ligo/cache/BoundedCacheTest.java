@@ -0,0 +1,97 @@
+package ligo.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests BoundedCache
+ */
+public class BoundedCacheTest {
+
+  private static final BoundedCache.Weigher<String, String> LENGTH =
+      new BoundedCache.Weigher<String, String>() {
+        @Override
+        public long weigh(String key, String value) {
+          return value.length();
+        }
+      };
+
+  @Test
+  public void testLruEviction() {
+    final BoundedCache<String, String> cache =
+        new BoundedCache<>(2, 100, LENGTH, BoundedCache.Eviction.LRU);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    assertEquals("1", cache.get("a"));
+    cache.put("c", "3");
+
+    assertNull("expecting least recently used entry to be evicted", cache.get("b"));
+    assertEquals("1", cache.get("a"));
+    assertEquals("3", cache.get("c"));
+
+    final CacheStats stats = cache.stats();
+    assertEquals(3, stats.getHitCount());
+    assertEquals(1, stats.getMissCount());
+    assertEquals(1, stats.getEvictionCount());
+    assertEquals(2, stats.getSize());
+  }
+
+  @Test
+  public void testLfuEviction() {
+    final BoundedCache<String, String> cache =
+        new BoundedCache<>(2, 100, LENGTH, BoundedCache.Eviction.LFU);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.get("a");
+    cache.get("a");
+    cache.get("b");
+    cache.put("c", "3");
+
+    assertNull("expecting least frequently used entry to be evicted", cache.get("b"));
+    assertEquals("1", cache.get("a"));
+  }
+
+  @Test
+  public void testWeightBound() {
+    final BoundedCache<String, String> cache =
+        new BoundedCache<>(10, 5, LENGTH, BoundedCache.Eviction.LRU);
+    cache.put("a", "123");
+    cache.put("b", "45");
+    assertEquals(5, cache.stats().getWeight());
+
+    cache.put("c", "6");
+    assertNull(cache.get("a"));
+    assertEquals(3, cache.stats().getWeight());
+
+    cache.put("d", "123456");
+    assertNull("expecting entry heavier than the cache not to be cached", cache.get("d"));
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testInvalidationRejectsStaleLoad() {
+    final BoundedCache<String, String> cache =
+        new BoundedCache<>(10, 100, LENGTH, BoundedCache.Eviction.LRU);
+    final long version = cache.version();
+    cache.invalidate("a");
+    assertFalse(cache.put("a", "stale", version));
+    assertNull(cache.get("a"));
+
+    assertTrue(cache.put("a", "fresh", cache.version()));
+    assertEquals("fresh", cache.get("a"));
+  }
+
+  @Test
+  public void testExpiry() throws InterruptedException {
+    final BoundedCache<String, String> cache =
+        new BoundedCache<>(10, 100, LENGTH, BoundedCache.Eviction.LRU, 20);
+    cache.put("a", "1");
+    assertEquals("1", cache.get("a"));
+
+    Thread.sleep(40l);
+    assertNull("expecting entry to expire", cache.get("a"));
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.stats().getWeight());
+  }
+}
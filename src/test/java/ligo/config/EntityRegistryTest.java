@@ -0,0 +1,27 @@
+package ligo.config;
+
+import com.google.common.collect.Sets;
+import me.roar.model.node.Lion;
+import me.roar.model.node.Roar;
+import me.roar.model.node.Sheep;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests EntityRegistry, as written by the processor at compile time
+ */
+public class EntityRegistryTest {
+
+  @Test
+  public void testRegistryListsEntities() {
+    final Set<Class<?>> entities = EntityRegistry.load(EntityRegistryTest.class.getClassLoader());
+    assertTrue(entities.containsAll(Sets.newHashSet(Lion.class, Roar.class, Sheep.class)));
+
+    assertEquals(Sets.<Class<?>>newHashSet(Lion.class, Roar.class, Sheep.class),
+        EntityRegistry.inPackage(entities, "me.roar.model"));
+    assertTrue(EntityRegistry.inPackage(entities, "me.roar.mod").isEmpty());
+  }
+}
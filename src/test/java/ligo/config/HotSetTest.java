@@ -0,0 +1,89 @@
+package ligo.config;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests HotSet
+ */
+public class HotSetTest {
+
+  private GraphDatabaseService db;
+  private File dir;
+
+  @Before
+  public void setUp() {
+    db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+    dir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    db.shutdown();
+    new File(dir, "hotset").delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testSaveAndWarmUp() {
+    final List<Long> ids = Lists.newArrayList();
+    try (Transaction tx = db.beginTx()) {
+      Node previous = null;
+      for (int i = 0; i < 10; i++) {
+        final Node node = db.createNode();
+        node.setProperty("name", "node" + i);
+        if (previous != null) {
+          previous.createRelationshipTo(node, DynamicRelationshipType.withName("NEXT"));
+        }
+        ids.add(node.getId());
+        previous = node;
+      }
+      tx.success();
+    }
+
+    final File file = new File(dir, "hotset");
+    final HotSet recorded = new HotSet(file, 3, 1);
+    for (int i = 0; i < ids.size(); i++) {
+      for (int reads = 0; reads <= i; reads++) {
+        recorded.record(ids.get(i));
+      }
+    }
+    assertEquals("expecting the most read first", Lists.newArrayList(ids.get(9), ids.get(8),
+        ids.get(7)), recorded.hottest());
+    recorded.save();
+
+    final HotSet replayed = new HotSet(file, 3, 1);
+    assertEquals(-1, replayed.getWarmUpMillis());
+    assertEquals(3, replayed.warmUp(db, 2));
+    assertTrue(replayed.getWarmUpMillis() >= 0);
+
+    final HotSet disabled = new HotSet(null, 3, 1);
+    disabled.record(ids.get(0));
+    assertTrue(disabled.hottest().isEmpty());
+  }
+
+  @Test
+  public void testAdmitsNewNodesOnceFull() {
+    final HotSet hotSet = new HotSet(new File(dir, "hotset"), 1, 1);
+    for (long id = 1; id <= 4; id++) {
+      hotSet.record(id);
+    }
+    for (int reads = 0; reads < 10; reads++) {
+      hotSet.record(5l);
+    }
+    assertEquals("expecting old counts to decay", Lists.newArrayList(5l), hotSet.hottest());
+  }
+}
@@ -0,0 +1,79 @@
+package ligo.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.schema.Schema;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests IndexMonitor
+ */
+public class IndexMonitorTest {
+
+  private static final Label THING = DynamicLabel.label("Thing");
+
+  private GraphDatabaseService db;
+
+  @Before
+  public void setUp() {
+    db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+    try (Transaction tx = db.beginTx()) {
+      for (int i = 0; i < 100; i++) {
+        db.createNode(THING).setProperty("key", i);
+      }
+      tx.success();
+    }
+    try (Transaction tx = db.beginTx()) {
+      db.schema().indexFor(THING).on("key").create();
+      tx.success();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    db.shutdown();
+  }
+
+  @Test
+  public void testAwaitOnline() {
+    final IndexMonitor monitor = new IndexMonitor(db, IndexMonitor.StartupMode.ROUTE, 3);
+    assertTrue(monitor.awaitOnline(10000));
+    assertEquals(Schema.IndexState.ONLINE, monitor.getState(THING, "key"));
+    assertEquals(1, monitor.getOnlineCount());
+    assertEquals(0, monitor.getPopulatingCount() + monitor.getFailedCount());
+    assertNull(monitor.getState(THING, "other"));
+
+    monitor.checkOnline(THING, "key");
+    monitor.checkOnline(THING, "other");
+    monitor.shutdown();
+  }
+
+  @Test
+  public void testRefreshesInBackground() throws InterruptedException {
+    try (Transaction tx = db.beginTx()) {
+      for (int i = 0; i < 10000; i++) {
+        db.createNode(THING).setProperty("other", i);
+      }
+      tx.success();
+    }
+    try (Transaction tx = db.beginTx()) {
+      db.schema().indexFor(THING).on("other").create();
+      tx.success();
+    }
+    final IndexMonitor monitor = new IndexMonitor(db, IndexMonitor.StartupMode.TIMEOUT, 3);
+    monitor.refresh();
+    // Only the background refreshes update the states from now on
+    for (int i = 0; i < 100 && monitor.getOnlineCount() < 2; i++) {
+      Thread.sleep(100l);
+    }
+    assertEquals(Schema.IndexState.ONLINE, monitor.getState(THING, "other"));
+    monitor.shutdown();
+  }
+}
@@ -0,0 +1,35 @@
+package ligo.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests Histogram
+ */
+public class HistogramTest {
+
+  @Test
+  public void testBuckets() {
+    for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE}) {
+      final int index = Histogram.indexOf(value);
+      assertTrue(Histogram.lowestOf(index) <= value);
+      assertTrue(index + 1 == 488 || Histogram.lowestOf(index + 1) > value);
+    }
+  }
+
+  @Test
+  public void testPercentiles() {
+    final Histogram histogram = new Histogram();
+    assertEquals(0, histogram.percentile(99));
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(500.5, histogram.getMean(), 0.001);
+    assertEquals(1000, histogram.getMax());
+    assertEquals(500, histogram.percentile(50), 500 / 8);
+    assertEquals(990, histogram.percentile(99), 990 / 8);
+    assertEquals(1000, histogram.percentile(100));
+  }
+}
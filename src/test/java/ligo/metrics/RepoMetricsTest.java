@@ -0,0 +1,81 @@
+package ligo.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests RepoMetrics
+ */
+public class RepoMetricsTest {
+
+  private GraphDatabaseService db;
+
+  @Before
+  public void setUp() {
+    db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+  }
+
+  @After
+  public void tearDown() {
+    db.shutdown();
+  }
+
+  @Test
+  public void testPublishesOverJmx() throws Exception {
+    final RepoMetrics metrics = new RepoMetrics("test");
+    for (int i = 0; i < 10; i++) {
+      final long start = metrics.start();
+      try (Transaction tx = metrics.beginTx(db)) {
+        db.createNode();
+        tx.success();
+      }
+      metrics.record(String.class, "save", start, 1);
+    }
+    try (Transaction tx = metrics.beginTx(db)) {
+      db.createNode();
+      tx.failure();
+    }
+    try (Transaction tx = metrics.beginTx(db)) {
+      try (Transaction nested = metrics.beginTx(db)) {
+        db.createNode();
+        nested.success();
+      }
+      tx.success();
+    }
+
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName save =
+        new ObjectName("ligo:type=RepoOperation,db=\"test\",entity=String,operation=save");
+    assertEquals(10L, server.getAttribute(save, "Count"));
+    assertEquals(1L, server.getAttribute(save, "MaxResultSize"));
+    assertTrue((Long) server.getAttribute(save, "P99Micros") > 0);
+
+    final ObjectName transactions = new ObjectName("ligo:type=Transactions,db=\"test\"");
+    assertEquals("expecting nested transactions not to be counted", 11L,
+        server.getAttribute(transactions, "CommitCount"));
+    assertEquals(1L, server.getAttribute(transactions, "RollbackCount"));
+    assertEquals(0L, server.getAttribute(transactions, "ActiveCount"));
+    assertEquals(1L, server.getAttribute(transactions, "PeakConcurrentCount"));
+
+    metrics.shutdown();
+    assertFalse(server.isRegistered(save));
+  }
+
+  @Test
+  public void testNoop() {
+    final long start = RepoMetrics.NOOP.start();
+    assertEquals(0, start);
+    RepoMetrics.NOOP.record(String.class, "save", start, 1);
+    assertNull(RepoMetrics.NOOP.getStats(String.class, "save"));
+  }
+}
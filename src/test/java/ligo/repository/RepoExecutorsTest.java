@@ -0,0 +1,57 @@
+package ligo.repository;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests RepoExecutors
+ */
+public class RepoExecutorsTest {
+
+  @Test
+  public void testShedsOnceSaturated() throws Exception {
+    final RepoExecutors executors = new RepoExecutors(1, 1, 1, 1);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<String> blocking = new Callable<String>() {
+      @Override
+      public String call() throws InterruptedException {
+        started.countDown();
+        release.await();
+        return "done";
+      }
+    };
+
+    final ListenableFuture<String> running = executors.read(blocking);
+    started.await();
+    final ListenableFuture<String> queued = executors.read(blocking);
+    final ListenableFuture<String> shed = executors.read(blocking);
+    try {
+      shed.get();
+      fail("expecting the read to be shed");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+    assertEquals(1, executors.getRejectedCount());
+
+    assertEquals("expecting writes to have their own pool", "write",
+        executors.write(new Callable<String>() {
+          @Override
+          public String call() {
+            return "write";
+          }
+        }).get());
+
+    release.countDown();
+    assertEquals("done", running.get());
+    assertEquals("done", queued.get());
+    executors.shutdown();
+  }
+}
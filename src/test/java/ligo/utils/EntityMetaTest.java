@@ -0,0 +1,48 @@
+package ligo.utils;
+
+import me.roar.model.node.Lion;
+import me.roar.model.node.Roar;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests EntityMeta
+ */
+public class EntityMetaTest {
+
+  @Test
+  public void testMetaIsBuiltOnce() {
+    assertSame(EntityMeta.of(Lion.class), EntityMeta.of(Lion.class));
+  }
+
+  @Test
+  public void testLionMeta() {
+    final EntityMeta<Lion> meta = EntityMeta.of(Lion.class);
+    assertTrue(meta.isEntity());
+    assertEquals("lion", meta.getLabelName());
+    assertTrue(meta.hasId());
+    assertEquals("id", meta.getIdAccessor().getKey());
+    assertEquals("lion_name_ft", meta.getFullTextIndexNames().get("name"));
+    assertTrue(meta.getExactIndexKeys().contains("age"));
+    assertEquals(3, meta.getIndexable().size());
+    assertEquals("handle", meta.getUniqueAccessors().get(0).getKey());
+  }
+
+  @Test
+  public void testAccessors() {
+    final EntityMeta<Roar> meta = EntityMeta.of(Roar.class);
+    final Roar roar = meta.newInstance();
+    assertNotNull(roar);
+
+    meta.getAccessors("text").get(0).set(roar, "roar text");
+    meta.getAccessors("uat").get(0).set(roar, 10L);
+    meta.getIdAccessor().set(roar, 5L);
+
+    assertEquals("roar text", roar.getText());
+    assertEquals(10L, roar.getuAt());
+    assertEquals(Long.valueOf(5L), roar.getId());
+    assertEquals("roar text", meta.getAccessors("text").get(0).get(roar));
+    assertTrue(meta.getAccessors("unknown").isEmpty());
+  }
+}
@@ -1,9 +1,23 @@
 package me.roar.model.repository;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Callables;
+import com.google.common.util.concurrent.ListenableFuture;
+import ligo.cache.BoundedCache;
+import ligo.cache.CacheStats;
+import ligo.config.DBConfig;
 import ligo.exceptions.IllegalLabelExtractionAttemptException;
+import ligo.repository.EntityCursor;
+import ligo.repository.GroupCommitter;
+import ligo.repository.Projection;
+import ligo.repository.RelativesPage;
+import ligo.repository.RepoExecutors;
+import ligo.utils.LazyRelatives;
+import ligo.utils.LoadedState;
 import me.roar.model.node.Lion;
 import me.roar.model.node.Roar;
+import me.roar.model.node.Sheep;
 import me.roar.model.relationship.Roars;
 import org.junit.Before;
 import org.junit.Test;
@@ -12,7 +26,15 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.junit.Assert.*;
 
@@ -24,14 +46,22 @@ public class LionRepoIntegrationTest {
   private static final String LION_NAME = "Ian";
   private static final String ROAR_TEXT_1 = "I architects";
   private static final String ROAR_TEXT_2 = "I chief";
+  private static final String ROAR_TEXT_3 = "I engineer";
+  private static final String LION_HANDLE = "@ian";
+  private static final String LION_NAME_2 = "Ianto";
+  private static final String SHEEP_NAME = "Ianfan";
   private static final LionRepo LION_REPO = new LionRepo();
   private static final RoarRepo ROAR_REPO = new RoarRepo();
+  private static final SheepRepo SHEEP_REPO = new SheepRepo();
 
   @Before
   public void setup() {
     LION_REPO.deleteByName(LION_NAME);
+    LION_REPO.deleteByName(LION_NAME_2);
+    SHEEP_REPO.deleteByName(SHEEP_NAME);
     ROAR_REPO.delete(Roar.class, RoarRepo.TEXT, ROAR_TEXT_1);
     ROAR_REPO.delete(Roar.class, RoarRepo.TEXT, ROAR_TEXT_2);
+    ROAR_REPO.delete(Roar.class, RoarRepo.TEXT, ROAR_TEXT_3);
   }
 
   @Test
@@ -138,4 +168,374 @@ public class LionRepoIntegrationTest {
       assertTrue(Sets.newHashSet(ROAR_TEXT_1, ROAR_TEXT_2).contains(roar.getText()));
     }
   }
+
+  @Test
+  public void testAddRoarsInBatches() {
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(10));
+    final List<Long> savedIds =
+        ROAR_REPO.createAll(Lists.newArrayList(new Roar().withText(ROAR_TEXT_1)));
+    assertEquals(1, savedIds.size());
+    final Roar savedRoar = ROAR_REPO.find(savedIds.get(0));
+
+    final int batchSize = LION_REPO.getBatchSize();
+    LION_REPO.setBatchSize(1);
+    final List<Long> ids;
+    try {
+      ids = LION_REPO.addRoars(lion, Lists.newArrayList(savedRoar, new Roar().withText(ROAR_TEXT_2)));
+    } finally {
+      LION_REPO.setBatchSize(batchSize);
+    }
+
+    assertEquals("Expecting 2 ids", 2, ids.size());
+    assertEquals("ids should be in input order", savedRoar.getId(), ids.get(0));
+    assertEquals(ROAR_TEXT_2, ROAR_REPO.find(ids.get(1)).getText());
+    assertEquals("Expecting 2 roars", 2, LION_REPO.getRoars(lion).size());
+  }
+
+  @Test
+  public void testSearchCursor() {
+    final Lion lion1 = LION_REPO.create(new Lion().withName(LION_NAME).withAge(10));
+    final Lion lion2 = LION_REPO.create(new Lion().withName(LION_NAME).withAge(11));
+
+    final Set<Long> ids = Sets.newHashSet();
+    try (EntityCursor<Lion> cursor = LION_REPO.searchByName(LION_NAME, 0, 10)) {
+      for (Lion lion : cursor) {
+        assertEquals(LION_NAME, lion.getName());
+        ids.add(lion.getId());
+      }
+    }
+    assertEquals(Sets.newHashSet(lion1.getId(), lion2.getId()), ids);
+
+    try (EntityCursor<Lion> cursor = LION_REPO.searchByName(LION_NAME, 1, 10)) {
+      assertTrue(cursor.hasNext());
+      assertTrue(ids.contains(cursor.next().getId()));
+      assertFalse("expecting 1 lion after skipping 1", cursor.hasNext());
+    }
+
+    try (EntityCursor<Lion> cursor = LION_REPO.searchByName(LION_NAME, 0, 1)) {
+      cursor.next();
+      assertFalse("expecting limit to apply", cursor.hasNext());
+      assertEquals(1, cursor.getReturned());
+    }
+
+    try (EntityCursor<Lion> cursor = LION_REPO.searchByName("", 0, 10)) {
+      assertFalse(cursor.hasNext());
+    }
+  }
+
+  @Test
+  public void testGetRoarsPaged() throws InterruptedException {
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(10));
+    // Roars of the same millisecond have no defined order
+    LION_REPO.addRoar(lion, new Roar().withText(ROAR_TEXT_1));
+    Thread.sleep(5l);
+    LION_REPO.addRoar(lion, new Roar().withText(ROAR_TEXT_2));
+    Thread.sleep(5l);
+    LION_REPO.addRoar(lion, new Roar().withText(ROAR_TEXT_3));
+
+    final RelativesPage<Roar> firstPage = LION_REPO.getRoars(lion, null, 2);
+    assertEquals(2, firstPage.getRelatives().size());
+    assertEquals(ROAR_TEXT_3, firstPage.getRelatives().get(0).getText());
+    assertEquals(ROAR_TEXT_2, firstPage.getRelatives().get(1).getText());
+    assertTrue(firstPage.hasNext());
+
+    final RelativesPage.Cursor cursor = RelativesPage.Cursor.parse(firstPage.getNext().toString());
+    final RelativesPage<Roar> lastPage = LION_REPO.getRoars(lion, cursor, 2);
+    assertEquals(1, lastPage.getRelatives().size());
+    assertEquals(ROAR_TEXT_1, lastPage.getRelatives().get(0).getText());
+    assertFalse(lastPage.hasNext());
+  }
+
+  @Test
+  public void testNearCache() throws InterruptedException, ExecutionException {
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(10));
+    LION_REPO.enableNearCache(Lion.class, 100, 1 << 20, BoundedCache.Eviction.LRU);
+    try {
+      assertEquals(LION_NAME, LION_REPO.find(lion.getId()).getName());
+      final Lion cached = LION_REPO.find(lion.getId());
+      assertEquals(LION_NAME, cached.getName());
+      assertEquals(lion.getId(), cached.getId());
+      assertNotSame("expecting a new instance per find", cached, LION_REPO.find(lion.getId()));
+
+      final CacheStats stats = LION_REPO.getNearCacheStats(Lion.class);
+      assertEquals(2, stats.getHitCount());
+      assertEquals(1, stats.getMissCount());
+
+      final Lion toUpdate = LION_REPO.findForUpdate(lion.getId());
+      final ExecutorService reader = Executors.newSingleThreadExecutor();
+      try (Transaction tx = LION_REPO.getDb().beginTx()) {
+        LION_REPO.update(toUpdate.withAge(11));
+        // Caches the committed snapshot while the update is not committed yet
+        assertEquals(10, reader.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            return LION_REPO.find(lion.getId()).getAge();
+          }
+        }).get().intValue());
+        tx.success();
+      } finally {
+        reader.shutdown();
+      }
+      assertEquals("expecting the commit to invalidate the cache", 11,
+          LION_REPO.find(lion.getId()).getAge());
+
+      LION_REPO.deleteByName(LION_NAME);
+      assertNull("expecting delete to invalidate the cache", LION_REPO.find(lion.getId()));
+    } finally {
+      LION_REPO.disableNearCache(Lion.class);
+    }
+  }
+
+  @Test
+  public void testSearchCache() {
+    final Lion lion1 = LION_REPO.create(new Lion().withName(LION_NAME).withAge(10));
+    LION_REPO.enableSearchCache("lion_name_ft", 100, 1 << 20, 60000);
+    try {
+      try (EntityCursor<Lion> cursor = LION_REPO.searchByName(LION_NAME, 0, 10)) {
+        assertEquals(lion1.getId(), cursor.next().getId());
+        assertFalse(cursor.hasNext());
+      }
+      assertEquals(1, LION_REPO.searchByName(LION_NAME).size());
+      assertEquals(1, LION_REPO.searchByName(LION_NAME).size());
+      try (EntityCursor<Lion> cursor = LION_REPO.searchByName(LION_NAME, 0, 10)) {
+        assertEquals(lion1.getId(), cursor.next().getId());
+      }
+      CacheStats stats = LION_REPO.getSearchCacheStats("lion_name_ft");
+      assertEquals(2, stats.getHitCount());
+      assertEquals(2, stats.getMissCount());
+
+      final Lion lion2 = LION_REPO.create(new Lion().withName(LION_NAME).withAge(12));
+      assertEquals("expecting create to invalidate the cache",
+          2, LION_REPO.searchByName(LION_NAME).size());
+
+      LION_REPO.delete(lion1.getId());
+      final Set<Lion> lions = LION_REPO.searchByName(LION_NAME);
+      assertEquals("expecting delete to invalidate the cache", 1, lions.size());
+      assertEquals(lion2.getId(), lions.iterator().next().getId());
+    } finally {
+      LION_REPO.disableSearchCache("lion_name_ft");
+    }
+  }
+
+  @Test
+  public void testUpsertConcurrently() throws InterruptedException, ExecutionException {
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    final List<Future<Lion>> upserts = Lists.newArrayList();
+    for (int i = 0; i < 16; i++) {
+      upserts.add(executor.submit(new Callable<Lion>() {
+        @Override
+        public Lion call() {
+          return LION_REPO.upsert(new Lion().withName(LION_NAME).withAge(7).withHandle(LION_HANDLE));
+        }
+      }));
+    }
+    final Set<Long> ids = Sets.newHashSet();
+    for (Future<Lion> upsert : upserts) {
+      ids.add(upsert.get().getId());
+    }
+    executor.shutdown();
+
+    assertEquals("expecting a single lion for the handle", 1, ids.size());
+    assertEquals(1, LION_REPO.findByName(LION_NAME).size());
+    assertEquals(LION_HANDLE, LION_REPO.find(ids.iterator().next()).getHandle());
+  }
+
+  @Test
+  public void testUpdate() throws InterruptedException {
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(10));
+    LION_REPO.addRoar(lion, new Roar().withText(ROAR_TEXT_1));
+
+    assertNull("expecting plain reads not to be tracked",
+        LoadedState.of(LION_REPO.find(lion.getId())));
+    final Lion loaded = LION_REPO.findForUpdate(lion.getId());
+    final long loadedAt = loaded.getuAt();
+    Thread.sleep(5l);
+    LION_REPO.update(loaded);
+    assertEquals("expecting no write without changes", loadedAt, LION_REPO.find(lion.getId()).getuAt());
+
+    loaded.withName(LION_NAME_2).withAge(11);
+    LION_REPO.update(loaded);
+
+    final Lion updated = LION_REPO.find(lion.getId());
+    assertEquals(LION_NAME_2, updated.getName());
+    assertEquals(11, updated.getAge());
+    assertTrue(updated.getuAt() > loadedAt);
+    assertEquals(lion.getcAt(), updated.getcAt());
+    assertEquals("expecting relationships to be kept", 1, LION_REPO.getRoars(updated).size());
+
+    final Lion concurrent = LION_REPO.findForUpdate(lion.getId());
+    LION_REPO.update(LION_REPO.findForUpdate(lion.getId()).withAge(12));
+    LION_REPO.update(concurrent.withHandle("@updated"));
+    assertEquals("expecting only the changed fields to be written", 12,
+        LION_REPO.find(lion.getId()).getAge());
+
+    assertNull(LION_REPO.searchByName(LION_NAME));
+    assertEquals(1, LION_REPO.searchByName(LION_NAME_2).size());
+    LION_REPO.deleteByName(LION_NAME_2);
+  }
+
+  @Test
+  public void testLazyRoars() {
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(10));
+    LION_REPO.addRoar(lion, new Roar().withText(ROAR_TEXT_1), new Roar().withText(ROAR_TEXT_2));
+
+    final Lion loaded = LION_REPO.find(lion.getId());
+    final LazyRelatives<Roar> roars = (LazyRelatives<Roar>) loaded.getRoars();
+    assertFalse("expecting roars not to be read on load", roars.isInitialized());
+    assertFalse(loaded.toString().contains(ROAR_TEXT_1));
+
+    assertEquals(2, roars.size());
+    final Roar roar = ROAR_REPO.findByText(ROAR_TEXT_1).iterator().next();
+    assertTrue(roars.contains(roar));
+    assertFalse(roars.contains(new Roar().withText(ROAR_TEXT_1)));
+    assertFalse("expecting size and contains not to read the ids", roars.isInitialized());
+
+    final Set<String> texts = Sets.newHashSet();
+    for (Roar lazyRoar : roars) {
+      texts.add(lazyRoar.getText());
+    }
+    assertEquals(Sets.newHashSet(ROAR_TEXT_1, ROAR_TEXT_2), texts);
+  }
+
+  @Test
+  public void testGetRoarsBatch() throws InterruptedException {
+    final Lion lion1 = LION_REPO.create(new Lion().withName(LION_NAME).withAge(10));
+    final Lion lion2 = LION_REPO.create(new Lion().withName(LION_NAME).withAge(11));
+    LION_REPO.addRoar(lion1, new Roar().withText(ROAR_TEXT_1));
+    Thread.sleep(5l);
+    LION_REPO.addRoar(lion1, new Roar().withText(ROAR_TEXT_2));
+    LION_REPO.addRoar(lion2, new Roar().withText(ROAR_TEXT_3));
+
+    final Map<Lion, List<Roar>> roars = LION_REPO.getRoars(Lists.newArrayList(lion1, lion2), 1);
+    assertEquals(Lists.newArrayList(lion1, lion2), Lists.newArrayList(roars.keySet()));
+    assertEquals(1, roars.get(lion1).size());
+    assertEquals("expecting the newest roar", ROAR_TEXT_2, roars.get(lion1).get(0).getText());
+    assertEquals(ROAR_TEXT_3, roars.get(lion2).get(0).getText());
+
+    assertEquals(2, LION_REPO.getRelativesBatch(Lists.newArrayList(lion1), Roars.newInstance())
+        .get(lion1).size());
+  }
+
+  @Test
+  public void testProjections() {
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(10));
+    LION_REPO.addRoar(lion, new Roar().withText(ROAR_TEXT_1));
+
+    final LionName view = LION_REPO.findByName(LION_NAME, Projection.of(LionName.class))
+        .iterator().next();
+    assertEquals(lion.getId(), view.id);
+    assertEquals(LION_NAME, view.name);
+
+    final Roar roar = LION_REPO.getRoars(lion, Projection.properties(Roar.class, "uAt"))
+        .iterator().next();
+    assertNull("expecting text not to be read", roar.getText());
+    assertTrue(roar.getuAt() > 0);
+
+    final Lion partial = LION_REPO.findByName(LION_NAME, Projection.properties(Lion.class, "name"))
+        .iterator().next();
+    assertEquals(0, partial.getAge());
+    LION_REPO.update(partial.withName(LION_NAME_2));
+
+    final Lion updated = LION_REPO.find(lion.getId());
+    assertEquals(LION_NAME_2, updated.getName());
+    assertEquals("expecting properties out of the projection to be kept", 10, updated.getAge());
+    LION_REPO.deleteByName(LION_NAME_2);
+  }
+
+  @Test
+  public void testAsyncRepo() throws InterruptedException, ExecutionException {
+    final RepoExecutors executors = new RepoExecutors(2, 10, 1, 10);
+    final AsyncLionRepo asyncRepo = new AsyncLionRepo(LION_REPO, executors);
+
+    final Lion lion = asyncRepo.create(new Lion().withName(LION_NAME).withAge(10)).get();
+    asyncRepo.addRoars(lion, Lists.newArrayList(new Roar().withText(ROAR_TEXT_1))).get();
+
+    assertEquals(LION_NAME, asyncRepo.find(lion.getId()).get().getName());
+    assertEquals(1, asyncRepo.getRoars(lion).get().size());
+    asyncRepo.deleteByName(LION_NAME).get();
+    assertNull(asyncRepo.findByName(LION_NAME).get());
+    executors.shutdown();
+  }
+
+  @Test
+  public void testGroupCommit() throws InterruptedException, ExecutionException {
+    final RepoExecutors executors = new RepoExecutors(1, 10, 1, 10);
+    final GroupCommitter committer = new GroupCommitter(LION_REPO.getDb(), 100, 200l, 100);
+    final AsyncLionRepo asyncRepo = new AsyncLionRepo(LION_REPO, executors, committer);
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(10));
+    final Sheep sheep = SHEEP_REPO.create(new Sheep().withName(SHEEP_NAME));
+    SHEEP_REPO.follows(sheep, lion);
+
+    final List<ListenableFuture<Void>> roars = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      roars.add(asyncRepo.addRoar(lion, new Roar().withText(ROAR_TEXT_1)));
+    }
+    final ListenableFuture<Void> failing = asyncRepo.addRoar(lion, null);
+    roars.add(asyncRepo.addRoar(lion, new Roar().withText(ROAR_TEXT_2)));
+    for (ListenableFuture<Void> roar : roars) {
+      roar.get();
+    }
+    try {
+      failing.get();
+      fail("expecting the null roar to fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof NullPointerException);
+    }
+
+    assertEquals("expecting only the failing roar to be dropped", 11, LION_REPO.getRoars(lion).size());
+    assertTrue("expecting roars to be grouped", committer.getBatchCount() < 11);
+    assertEquals("expecting roars to be fanned out once committed", 11,
+        SHEEP_REPO.getHomeTimeline(sheep, 20).size());
+    committer.shutdown();
+    try {
+      committer.submit(Callables.returning(1)).get();
+      fail("expecting writes to be rejected once shut down");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+    executors.shutdown();
+  }
+
+  @Test
+  public void testShardedRepo() throws InterruptedException, ExecutionException {
+    final List<DBConfig> dbConfigs = Lists.newArrayList(
+        new DBConfig("target/shards/shard-0"), new DBConfig("target/shards/shard-1"));
+    final RepoExecutors executors = new RepoExecutors(2, 10, 1, 10);
+    final ShardedLionRepo shardedRepo = new ShardedLionRepo(dbConfigs, executors);
+    for (LionRepo shard : shardedRepo.getShards()) {
+      shard.deleteAll(Lion.class);
+    }
+
+    assertTrue(shardedRepo.searchByName("shardlion").get().isEmpty());
+    final Set<Integer> usedShards = Sets.newHashSet();
+    for (int i = 0; i < 8; i++) {
+      final String name = "Shardlion " + i;
+      final Lion lion =
+          shardedRepo.create(new Lion().withName(name).withAge(i).withHandle("@shard" + i));
+      shardedRepo.addRoar(lion, new Roar().withText(ROAR_TEXT_1));
+      usedShards.add(shardedRepo.getShards().indexOf(shardedRepo.shardOf(lion)));
+      assertEquals(1, shardedRepo.findByName(name).get().size());
+      assertEquals(1, shardedRepo.getRoars(lion).size());
+      if (i == 0) {
+        assertEquals("expecting a shard without match to count as empty", 1,
+            shardedRepo.searchByName("shardlion").get().size());
+      }
+    }
+    assertEquals("expecting lions in both shards", 2, usedShards.size());
+    assertNull("expecting shards to be separate DBs", LION_REPO.findByName("Shardlion 0"));
+
+    assertEquals(8, shardedRepo.searchByName("shardlion").get().size());
+    shardedRepo.deleteByName("Shardlion 0");
+    assertEquals(7, shardedRepo.searchByName("shardlion").get().size());
+
+    executors.shutdown();
+    for (DBConfig dbConfig : dbConfigs) {
+      dbConfig.shutdown();
+    }
+  }
+
+  public static class LionName {
+    private Long id;
+    private String name;
+  }
 }
@@ -1,12 +1,426 @@
 package me.roar.model.repository;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import ligo.meta.BaseRelationship;
+import ligo.meta.BasicRelationType;
+import ligo.meta.Bucketed;
+import ligo.meta.Ordered;
+import ligo.meta.RelationType;
+import ligo.repository.RelativesPage;
+import ligo.repository.Traversal;
+import ligo.utils.Buckets;
+import ligo.utils.EntityMeta;
+import ligo.utils.EntityUtils;
+import me.roar.model.node.Lion;
+import me.roar.model.node.Roar;
+import me.roar.model.node.Sheep;
+import me.roar.model.relationship.Follows;
+import me.roar.model.relationship.Roars;
+import org.junit.Before;
 import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
 
 /**
  * Tests SheepRepo
  */
 public class SheepRepoIntegrationTest {
+
+  private static final String SHEEP_NAME = "Dolly";
+  private static final String SHEEP_NAME_2 = "Shaun";
+  private static final String LION_NAME = "Mufasa";
+  private static final String ROAR_TEXT_1 = "I follow";
+  private static final String ROAR_TEXT_2 = "I lead";
+  private static final SheepRepo SHEEP_REPO = new SheepRepo();
+  private static final LionRepo LION_REPO = new LionRepo();
+  private static final RoarRepo ROAR_REPO = new RoarRepo();
+
+  @Before
+  public void setup() {
+    SHEEP_REPO.deleteByName(SHEEP_NAME);
+    SHEEP_REPO.deleteByName(SHEEP_NAME_2);
+    LION_REPO.deleteByName(LION_NAME);
+    ROAR_REPO.delete(Roar.class, RoarRepo.TEXT, ROAR_TEXT_1);
+    ROAR_REPO.delete(Roar.class, RoarRepo.TEXT, ROAR_TEXT_2);
+  }
+
+  @Test
+  public void testFollows() throws InterruptedException {
+    final Sheep sheep = SHEEP_REPO.create(new Sheep().withName(SHEEP_NAME));
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(5));
+    LION_REPO.addRoar(lion, new Roar().withText(ROAR_TEXT_1));
+
+    SHEEP_REPO.follows(sheep, lion);
+    assertEquals(1, SHEEP_REPO.getRelatives(sheep, Follows.newInstance()).size());
+
+    List<Roar> timeline = SHEEP_REPO.getHomeTimeline(sheep, 10);
+    assertEquals("expecting backfilled roar", 1, timeline.size());
+    assertEquals(ROAR_TEXT_1, timeline.get(0).getText());
+
+    // Roars of the same millisecond have no defined order
+    Thread.sleep(5l);
+    LION_REPO.addRoar(lion, new Roar().withText(ROAR_TEXT_2));
+    timeline = SHEEP_REPO.getHomeTimeline(sheep, 10);
+    assertEquals(2, timeline.size());
+    assertEquals("expecting newest roar first", ROAR_TEXT_2, timeline.get(0).getText());
+  }
+
+  @Test
+  public void testHomeTimelineFanOutOnRead() throws InterruptedException {
+    final TimelineRepo timelineRepo = new TimelineRepo();
+    timelineRepo.setFanOutLimit(0);
+    final LionRepo lionRepo = new LionRepo(timelineRepo);
+    final SheepRepo sheepRepo = new SheepRepo(timelineRepo);
+
+    final Sheep sheep = sheepRepo.create(new Sheep().withName(SHEEP_NAME));
+    final Lion lion = lionRepo.create(new Lion().withName(LION_NAME).withAge(5));
+    sheepRepo.follows(sheep, lion);
+    lionRepo.addRoar(lion, new Roar().withText(ROAR_TEXT_1));
+    Thread.sleep(5l);
+    lionRepo.addRoar(lion, new Roar().withText(ROAR_TEXT_2));
+
+    final List<Roar> timeline = sheepRepo.getHomeTimeline(sheep, 1);
+    assertEquals(1, timeline.size());
+    assertEquals(ROAR_TEXT_2, timeline.get(0).getText());
+  }
+
+  @Test
+  public void testHomeTimelineKeepsNewestRoars() {
+    final TimelineRepo timelineRepo = new TimelineRepo();
+    timelineRepo.setTimelineSize(5);
+    final LionRepo lionRepo = new LionRepo(timelineRepo);
+    final SheepRepo sheepRepo = new SheepRepo(timelineRepo);
+
+    final Sheep sheep = sheepRepo.create(new Sheep().withName(SHEEP_NAME));
+    final Lion lion = lionRepo.create(new Lion().withName(LION_NAME).withAge(5));
+    sheepRepo.follows(sheep, lion);
+    final List<Long> ids = Lists.newArrayList();
+    for (int i = 0; i < 40; i++) {
+      final long id = ROAR_REPO.create(new Roar().withText(ROAR_TEXT_1)).getId();
+      timelineRepo.publish(lion, new long[]{id}, new long[]{1000 + i});
+      ids.add(id);
+    }
+    // The head was merged once it held 33 roars, keeping the 5 newest, and holds the 7 last ones
+    final List<Long> expected = Lists.reverse(ids.subList(28, 40));
+    assertEquals(expected, idsOf(sheepRepo.getHomeTimeline(sheep, 100)));
+
+    timelineRepo.publish(lion, new long[]{ids.get(0)}, new long[]{1000});
+    assertEquals("expecting roars older than the tail to be dropped", expected,
+        idsOf(sheepRepo.getHomeTimeline(sheep, 100)));
+  }
+
+  private static List<Long> idsOf(final List<Roar> roars) {
+    final List<Long> ids = Lists.newArrayList();
+    for (Roar roar : roars) {
+      ids.add(roar.getId());
+    }
+    return ids;
+  }
+
+  @Test
+  public void testGetRelativesBatchSharesRelatives() {
+    final Sheep sheep1 = SHEEP_REPO.create(new Sheep().withName(SHEEP_NAME));
+    final Sheep sheep2 = SHEEP_REPO.create(new Sheep().withName(SHEEP_NAME_2));
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(5));
+    SHEEP_REPO.follows(sheep1, lion);
+    SHEEP_REPO.follows(sheep2, lion);
+
+    final Map<Sheep, List<Lion>> followed =
+        SHEEP_REPO.getRelativesBatch(Arrays.asList(sheep1, sheep2), Follows.newInstance());
+    assertEquals(lion.getId(), followed.get(sheep1).get(0).getId());
+    assertSame("expecting one instance per relative", followed.get(sheep1).get(0),
+        followed.get(sheep2).get(0));
+  }
+
+  @Test
+  public void testTraverseFollowedRoars() {
+    final Sheep sheep = SHEEP_REPO.create(new Sheep().withName(SHEEP_NAME));
+    final Lion lion1 = LION_REPO.create(new Lion().withName(LION_NAME).withAge(5));
+    final Lion lion2 = LION_REPO.create(new Lion().withName(LION_NAME).withAge(6));
+    SHEEP_REPO.follows(sheep, lion1);
+    SHEEP_REPO.follows(sheep, lion2);
+    LION_REPO.addRoar(lion1, new Roar().withText(ROAR_TEXT_1));
+    LION_REPO.addRoar(lion2, new Roar().withText(ROAR_TEXT_2));
+
+    final Traversal<Roar> roars =
+        SHEEP_REPO.traverse(sheep).then(Follows.newInstance()).then(Roars.newInstance());
+    final Set<String> texts = Sets.newHashSet();
+    for (Roar roar : roars.list()) {
+      texts.add(roar.getText());
+    }
+    assertEquals(Sets.newHashSet(ROAR_TEXT_1, ROAR_TEXT_2), texts);
+    assertEquals(1, roars.limit(1).list().size());
+
+    final List<Roar> filtered = SHEEP_REPO.traverse(sheep)
+        .then(Follows.newInstance()).where("age", 6)
+        .then(Roars.newInstance()).list();
+    assertEquals(1, filtered.size());
+    assertEquals(ROAR_TEXT_2, filtered.get(0).getText());
+
+    final List<Lion> lions = SHEEP_REPO.traverse(sheep).then(Follows.newInstance()).list();
+    assertEquals(2, lions.size());
+  }
+
+  @Test
+  public void testDeleteAllInChunks() {
+    final SheepRepo sheepRepo = new SheepRepo();
+    sheepRepo.setBatchSize(5);
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(5));
+    for (int i = 0; i < 12; i++) {
+      sheepRepo.follows(sheepRepo.create(new Sheep().withName(SHEEP_NAME)), lion);
+    }
+
+    assertTrue(sheepRepo.deleteAll(Sheep.class) >= 12);
+    assertEquals(0, sheepRepo.deleteAll(Sheep.class));
+    try (Transaction tx = LION_REPO.getDb().beginTx()) {
+      final Node lionNode = LION_REPO.getDb().getNodeById(lion.getId());
+      assertFalse("expecting relationships to be deleted",
+          lionNode.getRelationships().iterator().hasNext());
+      assertFalse(GlobalGraphOperations.at(LION_REPO.getDb())
+          .getAllNodesWithLabel(EntityMeta.of(Sheep.class).getLabel()).iterator().hasNext());
+      assertEquals(0, sheepRepo.getDbConfig().getFullTextIndex("sheep_name_ft").query("name", SHEEP_NAME).size());
+      tx.success();
+    }
+  }
+
+  @Test
+  public void testDeleteSupernode() {
+    final SheepRepo sheepRepo = new SheepRepo();
+    sheepRepo.setBatchSize(5);
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(5));
+    final Sheep sheep = sheepRepo.create(new Sheep().withName(SHEEP_NAME));
+    sheepRepo.follows(sheep, lion);
+    for (int i = 0; i < 11; i++) {
+      sheepRepo.follows(sheepRepo.create(new Sheep().withName(SHEEP_NAME_2)), lion);
+    }
+
+    sheepRepo.delete(Lion.class, lion.getId());
+    assertNull(LION_REPO.find(lion.getId()));
+    assertNull(LION_REPO.findByName(LION_NAME));
+    assertTrue(sheepRepo.getRelatives(sheep, Follows.newInstance()).isEmpty());
+    assertNotNull("expecting relatives to be kept", sheepRepo.find(sheep.getId()));
+    assertEquals(0, sheepRepo.resumeDeletes());
+  }
+
+  @Test
+  public void testCountRelatives() {
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(5));
+    final Sheep sheep = SHEEP_REPO.create(new Sheep().withName(SHEEP_NAME));
+    SHEEP_REPO.follows(sheep, lion);
+    for (int i = 0; i < 2; i++) {
+      SHEEP_REPO.follows(SHEEP_REPO.create(new Sheep().withName(SHEEP_NAME_2)), lion);
+    }
+    LION_REPO.addRoar(lion, new Roar().withText(ROAR_TEXT_1), new Roar().withText(ROAR_TEXT_2));
+
+    assertEquals(3, LION_REPO.countFollowers(lion));
+    assertEquals(2, LION_REPO.countRoars(lion));
+    assertEquals(1, SHEEP_REPO.countRelatives(sheep, Follows.newInstance()));
+
+    SHEEP_REPO.delete(Sheep.class, sheep.getId());
+    assertEquals(2, LION_REPO.countFollowers(lion));
+    assertEquals(2, LION_REPO.countRoars(lion));
+  }
+
+  @Test
+  public void testBucketedRelationships() {
+    final Lion lion = LION_REPO.create(new Lion().withName(LION_NAME).withAge(5));
+    final Sheep sheep = SHEEP_REPO.create(new Sheep().withName(SHEEP_NAME));
+    SHEEP_REPO.addRelatives(sheep, new Watches(), lion);
+    for (int i = 0; i < 9; i++) {
+      SHEEP_REPO.addRelatives(SHEEP_REPO.create(new Sheep().withName(SHEEP_NAME_2)), new Watches(),
+          lion);
+    }
+
+    try (Transaction tx = LION_REPO.getDb().beginTx()) {
+      final Node lionNode = LION_REPO.getDb().getNodeById(lion.getId());
+      assertFalse("expecting no relationship on the lion itself",
+          lionNode.getRelationships(Watches.WATCHES, Direction.INCOMING).iterator().hasNext());
+      assertTrue(Iterables.size(Buckets.bucketsOf(lionNode, Watches.WATCHES)) <= 4);
+      tx.success();
+    }
+    assertEquals(lion.getId(),
+        SHEEP_REPO.getRelatives(sheep, new Watches()).iterator().next().getId());
+    assertEquals(10, LION_REPO.getRelatives(lion, new WatchedBy()).size());
+    assertEquals(10, LION_REPO.countRelatives(lion, new WatchedBy()));
+
+    final RelativesPage<Sheep> page = LION_REPO.getRelativesPage(lion, new WatchedBy(), null, 6);
+    assertEquals(6, page.getRelatives().size());
+    assertEquals(4, LION_REPO.getRelativesPage(lion, new WatchedBy(), page.getNext(), 6)
+        .getRelatives().size());
+
+    LION_REPO.delete(Lion.class, lion.getId());
+    assertTrue(SHEEP_REPO.getRelatives(sheep, new Watches()).isEmpty());
+  }
+
   @Test
-  public void testFollows() {
+  public void testReadsSkipNodesBeingDeleted() throws Exception {
+    final TimelineRepo timelineRepo = new TimelineRepo();
+    timelineRepo.setFanOutLimit(1);
+    final LionRepo lionRepo = new LionRepo(timelineRepo);
+    final SheepRepo sheepRepo = new SheepRepo(timelineRepo);
+    sheepRepo.setBatchSize(1);
+    final GraphDatabaseService db = sheepRepo.getDb();
+
+    final Sheep sheep = sheepRepo.create(new Sheep().withName(SHEEP_NAME));
+    final Lion lion = lionRepo.create(new Lion().withName(LION_NAME).withAge(5));
+    final Lion other = lionRepo.create(new Lion().withName(LION_NAME).withAge(6));
+    sheepRepo.follows(sheep, lion);
+    sheepRepo.follows(sheepRepo.create(new Sheep().withName(SHEEP_NAME_2)), lion);
+    sheepRepo.follows(sheep, other);
+    // The lion is read on fan-out, the roar of both lions is pushed by the other one
+    lionRepo.addRoar(lion, new Roar().withText(ROAR_TEXT_1));
+    final Roar roar = lionRepo.getRoars(lion).iterator().next();
+    lionRepo.addRoar(other, roar);
+    assertEquals(1, sheepRepo.getHomeTimeline(sheep, 10).size());
+    assertEquals(2, sheepRepo.getRelativesPage(sheep, Follows.newInstance(), null, 10)
+        .getRelatives().size());
+
+    // Holding one relationship of each keeps them hidden until released
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(3);
+    final Future<?> locker = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws InterruptedException {
+        try (Transaction tx = db.beginTx()) {
+          tx.acquireWriteLock(relationshipBetween(db, sheep.getId(), lion.getId()));
+          tx.acquireWriteLock(relationshipBetween(db, other.getId(), roar.getId()));
+          locked.countDown();
+          release.await();
+          tx.success();
+        }
+        return null;
+      }
+    });
+    locked.await();
+    final List<Future<?>> deletes = Lists.newArrayList();
+    deletes.add(executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        sheepRepo.delete(Lion.class, lion.getId());
+      }
+    }));
+    deletes.add(executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        sheepRepo.delete(Roar.class, roar.getId());
+      }
+    }));
+    try {
+      awaitDeleting(db, lion.getId());
+      awaitDeleting(db, roar.getId());
+
+      final List<Lion> followed =
+          sheepRepo.getRelativesPage(sheep, Follows.newInstance(), null, 10).getRelatives();
+      assertEquals(1, followed.size());
+      assertEquals(other.getId(), followed.get(0).getId());
+      assertTrue(lionRepo.getRoars(other, null, 10).getRelatives().isEmpty());
+      assertTrue(lionRepo.find(other.getId()).getRoars().isEmpty());
+      final List<Lion> traversed = sheepRepo.traverse(sheep).then(Follows.newInstance()).list();
+      assertEquals(1, traversed.size());
+      assertEquals(other.getId(), traversed.get(0).getId());
+      assertTrue(sheepRepo.traverse(sheep).then(Follows.newInstance()).then(Roars.newInstance())
+          .list().isEmpty());
+      assertTrue(sheepRepo.getHomeTimeline(sheep, 10).isEmpty());
+      for (Future<?> delete : deletes) {
+        assertFalse("expecting the drain to wait for the locks", delete.isDone());
+      }
+    } finally {
+      release.countDown();
+      locker.get(30, TimeUnit.SECONDS);
+      for (Future<?> delete : deletes) {
+        delete.get(30, TimeUnit.SECONDS);
+      }
+      executor.shutdown();
+    }
+    assertNull(lionRepo.find(lion.getId()));
+    assertEquals(0, sheepRepo.resumeDeletes());
+  }
+
+  private static Relationship relationshipBetween(final GraphDatabaseService db, final long from,
+                                                  final long to) {
+    for (Relationship relationship : db.getNodeById(from).getRelationships(Direction.OUTGOING)) {
+      if (relationship.getEndNode().getId() == to) {
+        return relationship;
+      }
+    }
+    throw new AssertionError("No relationship from " + from + " to " + to);
+  }
+
+  private static void awaitDeleting(final GraphDatabaseService db, final long id)
+      throws InterruptedException {
+    for (int i = 0; i < 1000; i++) {
+      try (Transaction tx = db.beginTx()) {
+        final boolean deleting = EntityUtils.isDeleting(db.getNodeById(id));
+        tx.success();
+        if (deleting) {
+          return;
+        }
+      }
+      Thread.sleep(10l);
+    }
+    fail("expecting node " + id + " to be hidden");
+  }
+
+  @Bucketed(buckets = 4)
+  @Ordered(key = "cAt")
+  public static class Watches implements BaseRelationship<Sheep, Lion> {
+    private static final BasicRelationType<Sheep, Lion> WATCHES =
+        new BasicRelationType<>(Sheep.class, Lion.class, "watches");
+
+    @Override
+    public RelationType<Sheep, Lion> getRelationType() {
+      return WATCHES;
+    }
+
+    @Override
+    public Map<String, ?> getProperties() {
+      return null;
+    }
+
+    @Override
+    public Direction getDirection() {
+      return Direction.OUTGOING;
+    }
+  }
+
+  @Ordered(key = "cAt")
+  public static class WatchedBy implements BaseRelationship<Lion, Sheep> {
+    private static final BasicRelationType<Lion, Sheep> WATCHED_BY =
+        new BasicRelationType<>(Lion.class, Sheep.class, "watches");
+
+    @Override
+    public RelationType<Lion, Sheep> getRelationType() {
+      return WATCHED_BY;
+    }
+
+    @Override
+    public Map<String, ?> getProperties() {
+      return null;
+    }
+
+    @Override
+    public Direction getDirection() {
+      return Direction.INCOMING;
+    }
   }
 }